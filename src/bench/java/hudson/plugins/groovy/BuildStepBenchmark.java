@@ -0,0 +1,73 @@
+package hudson.plugins.groovy;
+
+import hudson.FilePath;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.StreamBuildListener;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.SecureGroovyScript;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Per-build work of the builders and the {@code GROOVY} token macro, against a real build.
+ */
+@JmhBenchmark
+public class BuildStepBenchmark {
+
+    public static class JenkinsState extends JmhBenchmarkState {
+
+        FreeStyleBuild build;
+        BuildListener listener;
+        FilePath script;
+        Groovy groovy;
+        SystemGroovy systemGroovy;
+        GroovyTokenMacro tokenMacro;
+
+        @Override
+        public void setup() throws Exception {
+            FreeStyleProject p = getJenkins().createProject(FreeStyleProject.class, "p");
+            build = p.scheduleBuild2(0).get();
+            listener = new StreamBuildListener(OutputStream.nullOutputStream(), StandardCharsets.UTF_8);
+            script = new FilePath(new File("script.groovy"));
+            StringBuilder parameters = new StringBuilder();
+            StringBuilder scriptParameters = new StringBuilder();
+            StringBuilder properties = new StringBuilder();
+            StringBuilder classPath = new StringBuilder();
+            for (int i = 0; i < 200; i++) {
+                parameters.append("-D").append("param").append(i).append("=${BUILD_NUMBER} ");
+                scriptParameters.append("--arg").append(i).append(" \"${JOB_NAME} ").append(i).append("\" ");
+                properties.append("some.property.").append(i).append("=value ").append(i).append('\n');
+                classPath.append("/opt/libs/library-").append(i).append(".jar ");
+            }
+            groovy = new Groovy(new StringScriptSource("println 'hello'"), null, parameters.toString(),
+                    scriptParameters.toString(), properties.toString(), "-Xmx256m", classPath.toString());
+            systemGroovy = new SystemGroovy(new StringSystemScriptSource(new SecureGroovyScript("def s = 0; for (int i = 0; i < 100; i++) {s += i}; s", true, null)));
+            getJenkins().getDescriptorByType(Groovy.DescriptorImpl.class).setAllowMacro(true);
+            tokenMacro = new GroovyTokenMacro();
+            tokenMacro.script = "build.number * 2";
+        }
+
+    }
+
+    @Benchmark
+    public List<String> buildCommandLine(JenkinsState state) throws Exception {
+        return state.groovy.buildCommandLine(state.build, state.listener, state.script, true);
+    }
+
+    @Benchmark
+    public Object systemGroovyRun(JenkinsState state) throws Exception {
+        return state.systemGroovy.run(state.build, state.listener, null);
+    }
+
+    @Benchmark
+    public String tokenMacroEvaluate(JenkinsState state) throws Exception {
+        return state.tokenMacro.evaluate(state.build, state.listener, "GROOVY");
+    }
+
+}
@@ -0,0 +1,51 @@
+package hudson.plugins.groovy;
+
+import java.io.IOException;
+import java.util.Properties;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing of builder fields which does not need a running Jenkins.
+ */
+@JmhBenchmark
+public class CommandLineBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Fixtures {
+
+        @Param({"10", "1000"})
+        public int size;
+
+        String scriptParameters;
+        String properties;
+
+        @Setup
+        public void setup() {
+            StringBuilder params = new StringBuilder();
+            StringBuilder props = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                params.append("--option").append(i).append(" \"quoted value ").append(i).append("\" ");
+                props.append("some.property.").append(i).append("=value ").append(i).append('\n');
+            }
+            scriptParameters = params.toString();
+            properties = props.toString();
+        }
+
+    }
+
+    @Benchmark
+    public String[] parseParams(Fixtures fixtures) {
+        return Groovy.parseParams(fixtures.scriptParameters);
+    }
+
+    @Benchmark
+    public Properties parseProperties(Fixtures fixtures) throws IOException {
+        return AbstractGroovy.parseProperties(fixtures.properties);
+    }
+
+}
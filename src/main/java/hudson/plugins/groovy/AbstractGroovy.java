@@ -1,12 +1,22 @@
 package hudson.plugins.groovy;
 
 import hudson.DescriptorExtensionList;
+import hudson.EnvVars;
+import hudson.Util;
+import hudson.model.AbstractBuild;
 import hudson.model.Descriptor;
+import hudson.model.ParametersAction;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
+import hudson.util.VariableResolver;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -14,6 +24,9 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.lang.StringUtils;
+
 import org.kohsuke.stapler.StaplerRequest;
 
 /**
@@ -79,4 +92,55 @@ public abstract class AbstractGroovy extends Builder {
         }
         return props;
     }
+
+    /**
+     * The arguments passed to the script itself, with build parameters and environment variables expanded.
+     * @param env as from {@link Groovy#buildEnvironment}
+     */
+    static @NonNull List<String> buildScriptParameters(@NonNull AbstractBuild<?,?> build, String scriptParameters, @NonNull EnvVars env) {
+        ArrayList<String> list = new ArrayList<String>();
+        if(StringUtils.isNotBlank(scriptParameters)) {
+            VariableResolver<String> vr = new VariableResolver.ByMap<String>(env);
+            String[] params = parseParams(scriptParameters);
+            ParametersAction parameters = build.getAction(ParametersAction.class);
+            for(String param : params) {
+            	//first replace parameter from parameterized build
+            	if (parameters != null) {
+                    param = parameters.substitute(build, param);
+                }
+            	//then replace evn vars
+            	param = Util.replaceMacro(param,vr);
+                list.add(param);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Parse parameters to be passed as arguments to the groovy binary
+     *
+     */
+    static String[] parseParams(String line) {
+        //JENKINS-24870 CommandLine.getExecutable tries to fix file separators, so if the first param contains slashes, it can cause problems
+        //Adding some placeholder instead of executable
+        // TODO perhaps QuotedStringTokenizer.tokenize suffices, so we can drop the commons-exec dep?
+        CommandLine cmdLine = CommandLine.parse("executable_placeholder " + line);
+        String[] parsedArgs = cmdLine.getArguments();
+        String[] args = new String[parsedArgs.length];
+        if(parsedArgs.length > 0) {
+            System.arraycopy(parsedArgs, 0, args, 0, parsedArgs.length);
+        }
+        return args;
+    }
+
+    /**
+     * Computes a SHA-256 digest of some text, e.g. to use a script as a cache key.
+     */
+    static @NonNull String digest(@NonNull String text) {
+        try {
+            return Util.toHexString(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException x) {
+            throw new IllegalStateException(x);
+        }
+    }
 }
@@ -0,0 +1,312 @@
+package hudson.plugins.groovy;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.Computer;
+import hudson.remoting.Channel;
+import hudson.remoting.RemoteOutputStream;
+import hudson.remoting.VirtualChannel;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.security.MasterToSlaveCallable;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Runs a Groovy script inside the JVM of the agent the build runs on, rather than forking a new JVM as {@link Groovy} does,
+ * for small scripts whose work costs less than starting a JVM.
+ * <p>Compiled scripts are kept per agent connection by digest, each in its own class loader below Groovy,
+ * which is closed once the script has been evicted and no build runs it any more;
+ * {@code println} goes to the build log, but anything writing to {@link System#out} directly ends up in the agent log.
+ * Since scripts share the agent JVM, they must not call {@link System#exit} or leave threads behind.
+ * Refuses to run on the built-in node, which is the controller JVM; that is what {@link SystemGroovy} is for.
+ */
+public class AgentGroovy extends AbstractGroovy {
+
+    private static final Logger LOGGER = Logger.getLogger(AgentGroovy.class.getName());
+
+    private final ScriptSource scriptSource;
+    private String scriptParameters;
+    private String bindings;
+
+    @DataBoundConstructor
+    public AgentGroovy(ScriptSource scriptSource) {
+        this.scriptSource = scriptSource;
+    }
+
+    public ScriptSource getScriptSource() {
+        return scriptSource;
+    }
+
+    public String getScriptParameters() {
+        return scriptParameters;
+    }
+
+    @DataBoundSetter
+    public void setScriptParameters(String scriptParameters) {
+        this.scriptParameters = Util.fixEmpty(scriptParameters);
+    }
+
+    public String getBindings() {
+        return bindings;
+    }
+
+    @DataBoundSetter
+    public void setBindings(String bindings) {
+        this.bindings = Util.fixEmpty(bindings);
+    }
+
+    @Override
+    public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+        if (scriptSource == null) {
+            listener.fatalError("There is no script configured for this builder");
+            return false;
+        }
+        VirtualChannel channel = launcher.getChannel();
+        Computer computer = Computer.currentComputer();
+        if (channel == null || channel == FilePath.localChannel || computer == null || computer.getNode() == Jenkins.get()) {
+            throw new AbortException("Groovy scripts cannot run in the agent JVM on the built-in node; use a system Groovy script instead");
+        }
+        FilePath ws = build.getWorkspace();
+        PhaseTimer timer = new PhaseTimer("Agent Groovy");
+        timer.context(build);
+        timer.start("script");
+        String text;
+        FilePath script = null;
+        if (scriptSource instanceof StringScriptSource) {
+            text = ((StringScriptSource) scriptSource).getCommand();
+            timer.script(text);
+        } else {
+            script = scriptSource.getScriptFile(ws, build, listener);
+            text = null;
+        }
+        EnvVars env = Groovy.buildEnvironment(build, listener);
+        List<String> args = buildScriptParameters(build, scriptParameters, env);
+        Map<String, String> variables = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : parseProperties(bindings).entrySet()) {
+            variables.put(entry.getKey().toString(), entry.getValue().toString());
+        }
+        timer.start("execution");
+        preload(channel);
+        boolean success;
+        try {
+            success = channel.call(new Run(text, script != null ? script.getRemote() : null, args.toArray(new String[0]),
+                    variables, new HashMap<>(env), new RemoteOutputStream(listener.getLogger())));
+        } finally {
+            timer.record(build, listener);
+        }
+        return success;
+    }
+
+    /** Agent connections which already have the Groovy jar; entries are dropped once the channel is gone. */
+    private static final Map<VirtualChannel, Boolean> PRELOADED = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Sends the Groovy jar to the agent at once, rather than loading its classes one by one as scripts need them.
+     */
+    private static void preload(VirtualChannel channel) throws IOException, InterruptedException {
+        if (channel instanceof Channel && PRELOADED.put(channel, true) == null) {
+            ((Channel) channel).preloadJar(AgentGroovy.class.getClassLoader(), GroovyShell.class);
+        }
+    }
+
+    /**
+     * Compiles, if need be, and runs a script on the agent.
+     */
+    private static final class Run extends MasterToSlaveCallable<Boolean, IOException> {
+
+        private static final long serialVersionUID = 1;
+
+        private static final int MAX_SCRIPTS = 100;
+
+        /** Compiled scripts by digest, least recently used first; lives as long as the connection to the controller. */
+        private static final Map<String, Compiled> SCRIPTS = new LinkedHashMap<>(16, 0.75f, true);
+
+        private final String text;
+        private final String path;
+        private final String[] args;
+        private final Map<String, String> variables;
+        private final Map<String, String> env;
+        private final OutputStream out;
+
+        Run(String text, String path, String[] args, Map<String, String> variables, Map<String, String> env, OutputStream out) {
+            this.text = text;
+            this.path = path;
+            this.args = args;
+            this.variables = variables;
+            this.env = env;
+            this.out = out;
+        }
+
+        @Override
+        public Boolean call() throws IOException {
+            String source = text != null ? text : Files.readString(Paths.get(path), StandardCharsets.UTF_8);
+            String digest = digest(source);
+            // not closed, which would close the build log
+            PrintStream ps = new PrintStream(out, true, StandardCharsets.UTF_8);
+            try {
+                Compiled compiled = acquire(source, digest);
+                try {
+                    Binding binding = new Binding();
+                    binding.setVariable("args", args);
+                    binding.setVariable("out", ps);
+                    binding.setVariable("env", env);
+                    for (Map.Entry<String, String> variable : variables.entrySet()) {
+                        binding.setVariable(variable.getKey(), variable.getValue());
+                    }
+                    Script script = InvokerHelper.createScript(compiled.type, binding);
+                    script.run();
+                } finally {
+                    release(compiled);
+                }
+                return true;
+            } catch (Throwable x) {
+                x.printStackTrace(ps);
+                return false;
+            } finally {
+                ps.flush();
+            }
+        }
+
+        /**
+         * Looks up or compiles a script, pinning it until {@link #release}.
+         * Should another build have compiled the same script meanwhile, keeps the first one.
+         */
+        private static Compiled acquire(String source, String digest) {
+            synchronized (SCRIPTS) {
+                Compiled compiled = SCRIPTS.get(digest);
+                if (compiled != null) {
+                    compiled.users++;
+                    return compiled;
+                }
+            }
+            Compiled fresh = new Compiled(source, digest);
+            List<Compiled> toClose = new ArrayList<>();
+            Compiled result;
+            synchronized (SCRIPTS) {
+                Compiled existing = SCRIPTS.get(digest);
+                if (existing != null) {
+                    toClose.add(fresh);
+                    result = existing;
+                } else {
+                    SCRIPTS.put(digest, fresh);
+                    result = fresh;
+                    if (SCRIPTS.size() > MAX_SCRIPTS) {
+                        Iterator<Compiled> it = SCRIPTS.values().iterator();
+                        Compiled eldest = it.next();
+                        it.remove();
+                        eldest.evicted = true;
+                        if (eldest.users == 0) {
+                            toClose.add(eldest);
+                        }
+                    }
+                }
+                result.users++;
+            }
+            for (Compiled c : toClose) {
+                c.close();
+            }
+            return result;
+        }
+
+        private static void release(Compiled compiled) {
+            boolean close;
+            synchronized (SCRIPTS) {
+                compiled.users--;
+                close = compiled.evicted && compiled.users == 0;
+            }
+            if (close) {
+                compiled.close();
+            }
+        }
+
+    }
+
+    /**
+     * A script compiled in its own class loader, so that once dropped from the cache and no longer running, its classes can be unloaded.
+     */
+    private static final class Compiled {
+
+        private final GroovyClassLoader loader;
+        final Class<?> type;
+        /** Guarded by {@link Run#SCRIPTS}. */
+        int users;
+        /** Guarded by {@link Run#SCRIPTS}. */
+        boolean evicted;
+
+        Compiled(String source, String digest) {
+            loader = new GroovyClassLoader(GroovyShell.class.getClassLoader());
+            try {
+                type = loader.parseClass(new GroovyCodeSource(source, "Script_" + digest.substring(0, 16) + ".groovy", "/groovy/shell"), false);
+            } catch (RuntimeException | LinkageError x) {
+                close();
+                throw x;
+            }
+        }
+
+        /**
+         * Unregisters the classes of the script from the Groovy runtime, which would otherwise keep them, and closes its loader.
+         */
+        void close() {
+            for (Class<?> c : loader.getLoadedClasses()) {
+                InvokerHelper.removeClass(c);
+            }
+            loader.clearCache();
+            try {
+                loader.close();
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "failed to close class loader of a cached script", x);
+            }
+        }
+
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends AbstractGroovyDescriptor {
+
+        public DescriptorImpl() {
+            super(AgentGroovy.class);
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Execute Groovy script in the agent JVM";
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+            return true;
+        }
+
+    }
+
+}
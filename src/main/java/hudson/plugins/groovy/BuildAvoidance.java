@@ -0,0 +1,207 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.tools.ant.DirectoryScanner;
+
+/**
+ * Skips {@link Groovy} builders whose script, command line and input files are the same as in their last successful run,
+ * restoring the output files of that run instead, see {@link Groovy#isSkipUnchanged}.
+ * <p>Outputs are kept in {@code caches/groovy-outputs} under the agent root, in a directory per builder of a job and its declared inputs and outputs,
+ * holding the outputs of the last successful run only, under the SHA-256 fingerprint of everything that run depended on.
+ * A changed fingerprint is thus a miss, and the outputs of the next successful run replace the old ones.
+ */
+final class BuildAvoidance {
+
+    static final String DIRECTORY = "caches/groovy-outputs";
+
+    /** Stands for the script in fingerprinted command lines, since inline scripts are written to files with random names. */
+    private static final String SCRIPT = "<script>";
+
+    private final FilePath ws;
+    private final FilePath dir;
+    private final String fingerprint;
+    private final @CheckForNull String outputs;
+
+    private BuildAvoidance(FilePath ws, FilePath dir, String fingerprint, String outputs) {
+        this.ws = ws;
+        this.dir = dir;
+        this.fingerprint = fingerprint;
+        this.outputs = outputs;
+    }
+
+    /**
+     * Fingerprints one launch.
+     * @param root the root directory of the agent
+     * @param job the full name of the job
+     * @param builder the index of the builder in the job, so that several builders of one job do not replace each other's outputs
+     * @param script the script file, unless piped in
+     * @param stdin the script piped in, if so
+     * @param cmd the command line, which may refer to {@code script}
+     * @param javaOpts the {@code JAVA_OPTS} of the launch
+     * @param inputs Ant patterns of input files in the workspace
+     * @param outputs Ant patterns of output files in the workspace
+     */
+    static @NonNull BuildAvoidance prepare(@NonNull FilePath root, @NonNull FilePath ws, @NonNull String job, int builder, @CheckForNull FilePath script,
+                                           @CheckForNull String stdin, @NonNull List<String> cmd, @CheckForNull String javaOpts,
+                                           @CheckForNull String inputs, @CheckForNull String outputs) throws IOException, InterruptedException {
+        StringBuilder b = new StringBuilder();
+        for (String arg : cmd) {
+            b.append(script != null ? arg.replace(script.getRemote(), SCRIPT) : arg).append('\0');
+        }
+        b.append('\n').append(javaOpts).append('\n').append(inputs).append('\n').append(outputs).append('\n');
+        String fingerprint = ws.act(new Fingerprint(script != null ? script.getRemote() : null, stdin, b.toString(), inputs));
+        FilePath dir = root.child(DIRECTORY).child(Util.getDigestOf(job + '\n' + builder + '\n' + inputs + '\n' + outputs));
+        return new BuildAvoidance(ws, dir, fingerprint, outputs);
+    }
+
+    /**
+     * Copies the outputs of the last successful run to the workspace, if it had the same fingerprint.
+     * @return whether it did, so the launch can be skipped
+     */
+    boolean restore(@NonNull TaskListener listener) throws IOException, InterruptedException {
+        FilePath entry = dir.child(fingerprint);
+        if (!entry.isDirectory()) {
+            return false;
+        }
+        int count = entry.copyRecursiveTo(ws);
+        listener.getLogger().println("Inputs unchanged since the last successful run, restored " + count + " output files instead of running the script");
+        return true;
+    }
+
+    /**
+     * Keeps the outputs of a successful run, in place of those of the previous one.
+     */
+    void save(@NonNull TaskListener listener) throws InterruptedException {
+        try {
+            ws.act(new Save(dir.getRemote(), fingerprint, outputs));
+        } catch (IOException x) {
+            listener.error("Could not keep the outputs of the script for later builds: " + x);
+        }
+    }
+
+    private static final class Fingerprint extends MasterToSlaveFileCallable<String> {
+
+        private static final long serialVersionUID = 1;
+
+        private final String script;
+        private final String stdin;
+        private final String launch;
+        private final String inputs;
+
+        Fingerprint(String script, String stdin, String launch, String inputs) {
+            this.script = script;
+            this.stdin = stdin;
+            this.launch = launch;
+            this.inputs = inputs;
+        }
+
+        @Override
+        public String invoke(File ws, VirtualChannel channel) throws IOException {
+            MessageDigest md = sha256();
+            md.update(script != null ? Files.readAllBytes(new File(script).toPath()) : stdin.getBytes(StandardCharsets.UTF_8));
+            md.update(launch.getBytes(StandardCharsets.UTF_8));
+            if (inputs != null) {
+                DirectoryScanner ds = Util.createFileSet(ws, inputs).getDirectoryScanner();
+                String[] files = ds.getIncludedFiles();
+                Arrays.sort(files);
+                for (String file : files) {
+                    MessageDigest content = sha256();
+                    try (InputStream is = new DigestInputStream(Files.newInputStream(new File(ws, file).toPath()), content)) {
+                        is.transferTo(OutputStream.nullOutputStream());
+                    }
+                    md.update((file.replace(File.separatorChar, '/') + '\0' + Util.toHexString(content.digest()) + '\n').getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return Util.toHexString(md.digest());
+        }
+
+        private static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException x) {
+                throw new IllegalStateException(x);
+            }
+        }
+
+    }
+
+    /**
+     * Copies outputs to a temporary directory, moves it into place, then deletes the outputs of earlier runs.
+     */
+    private static final class Save extends MasterToSlaveFileCallable<Void> {
+
+        private static final long serialVersionUID = 1;
+
+        private final String dir;
+        private final String fingerprint;
+        private final String outputs;
+
+        Save(String dir, String fingerprint, String outputs) {
+            this.dir = dir;
+            this.fingerprint = fingerprint;
+            this.outputs = outputs;
+        }
+
+        @Override
+        public Void invoke(File ws, VirtualChannel channel) throws IOException {
+            File d = new File(dir);
+            File entry = new File(d, fingerprint);
+            File tmp = new File(d, fingerprint + '.' + UUID.randomUUID() + ".tmp");
+            try {
+                Files.createDirectories(tmp.toPath());
+                if (outputs != null) {
+                    for (String file : Util.createFileSet(ws, outputs).getDirectoryScanner().getIncludedFiles()) {
+                        Path target = tmp.toPath().resolve(file);
+                        Files.createDirectories(target.getParent());
+                        Files.copy(new File(ws, file).toPath(), target, StandardCopyOption.COPY_ATTRIBUTES);
+                    }
+                }
+                if (!entry.isDirectory()) {
+                    try {
+                        Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    } catch (IOException x) {
+                        if (!entry.isDirectory()) {
+                            throw x;
+                        }
+                        // saved concurrently by another build
+                    }
+                }
+            } finally {
+                if (tmp.exists()) {
+                    Util.deleteRecursive(tmp);
+                }
+            }
+            long stale = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+            File[] earlier = d.listFiles(f -> !f.getName().equals(fingerprint) && (!f.getName().endsWith(".tmp") || f.lastModified() < stale));
+            if (earlier != null) {
+                for (File f : earlier) {
+                    Util.deleteRecursive(f);
+                }
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,204 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jenkins.security.MasterToSlaveCallable;
+
+/**
+ * Application class data sharing archives for forked Groovy JVMs, see {@link GroovyInstallation#isCds}.
+ * <p>Archives live in {@code caches/groovy-cds} under the agent root, named after the Groovy and Java homes
+ * and a fingerprint of the Groovy jars and the JDK, so a changed installation or JDK gets a new archive and the old one is deleted.
+ * The first launch dumps the classes it loaded to a temporary file when it exits ({@code -XX:ArchiveClassesAtExit}, JDK 13 or newer),
+ * which is then moved into place, so concurrent launches never map a partially written archive.
+ */
+final class ClassDataSharing {
+
+    static final String DIRECTORY = "caches/groovy-cds";
+
+    /** Archive mismatches are expected after updates and must not end up in the build log. */
+    private static final String QUIET = "-Xlog:cds=off -Xlog:cds+dynamic=off";
+
+    private ClassDataSharing() {}
+
+    /**
+     * An archive to use, or to create, for one launch.
+     */
+    static final class Archive implements Serializable {
+
+        private static final long serialVersionUID = 1;
+
+        final String file;
+        /** Where this launch dumps a new archive, if there is none yet. */
+        final @CheckForNull String dump;
+
+        Archive(String file, @CheckForNull String dump) {
+            this.file = file;
+            this.dump = dump;
+        }
+
+        String getJavaOpts() {
+            return dump != null ? "-XX:ArchiveClassesAtExit=" + dump + ' ' + QUIET : "-XX:SharedArchiveFile=" + file + " -Xshare:auto " + QUIET;
+        }
+
+        /**
+         * Moves a freshly dumped archive into place, once the JVM has exited.
+         */
+        void commit(@NonNull VirtualChannel channel, @NonNull TaskListener listener) throws InterruptedException {
+            if (dump == null) {
+                return;
+            }
+            try {
+                if (channel.call(new Commit(dump, file))) {
+                    listener.getLogger().println("Created class data sharing archive " + file);
+                }
+            } catch (IOException x) {
+                listener.error("Could not create class data sharing archive " + file + ": " + x);
+            }
+        }
+
+    }
+
+    /**
+     * Finds the archive for a Groovy home and a JDK on an agent.
+     * @param root the root directory of the agent
+     * @param env the launch environment, to locate the JDK from {@code JAVA_HOME} or {@code PATH} as the Groovy launcher does
+     * @return null if archives cannot be used there, e.g. as the JDK is too old
+     */
+    static @CheckForNull Archive prepare(@NonNull FilePath root, @NonNull String groovyHome, @NonNull Map<String, String> env) throws IOException, InterruptedException {
+        return root.act(new Prepare(root.child(DIRECTORY).getRemote(), groovyHome, env.get("JAVA_HOME"), env.get("PATH")));
+    }
+
+    private static final class Prepare extends MasterToSlaveCallable<Archive, IOException> {
+
+        private static final long serialVersionUID = 1;
+
+        private static final Pattern JAVA_VERSION = Pattern.compile("^JAVA_VERSION=\"(\\d+)", Pattern.MULTILINE);
+
+        private final String dir;
+        private final String groovyHome;
+        private final String javaHome;
+        private final String path;
+
+        Prepare(String dir, String groovyHome, String javaHome, String path) {
+            this.dir = dir;
+            this.groovyHome = groovyHome;
+            this.javaHome = javaHome;
+            this.path = path;
+        }
+
+        @Override
+        public Archive call() throws IOException {
+            File java = javaHome();
+            if (java == null || dir.matches(".*\\s.*")) {
+                return null; // unknown JDK, or a path JAVA_OPTS cannot carry
+            }
+            File release = new File(java, "release");
+            if (!release.isFile()) {
+                return null;
+            }
+            String releaseText = Files.readString(release.toPath(), StandardCharsets.UTF_8);
+            Matcher m = JAVA_VERSION.matcher(releaseText);
+            if (!m.find() || Integer.parseInt(m.group(1)) < 13) {
+                return null;
+            }
+            File[] jars = new File(groovyHome, "lib").listFiles((d, name) -> name.endsWith(".jar"));
+            if (jars == null) {
+                return null;
+            }
+            Arrays.sort(jars);
+            StringBuilder fingerprint = new StringBuilder(releaseText);
+            File modules = new File(java, "lib/modules");
+            fingerprint.append(modules.length()).append(' ').append(modules.lastModified()).append('\n');
+            for (File jar : jars) {
+                fingerprint.append(jar.getName()).append(' ').append(jar.length()).append(' ').append(jar.lastModified()).append('\n');
+            }
+            String prefix = Util.getDigestOf(groovyHome + '\n' + java.getPath()) + '-';
+            String name = prefix + Util.getDigestOf(fingerprint.toString()) + ".jsa";
+            File d = new File(dir);
+            Files.createDirectories(d.toPath());
+            File[] existing = d.listFiles();
+            long stale = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+            if (existing != null) {
+                for (File f : existing) {
+                    boolean outdated = f.getName().startsWith(prefix) && f.getName().endsWith(".jsa") && !f.getName().equals(name);
+                    boolean abandoned = f.getName().endsWith(".tmp") && f.lastModified() < stale;
+                    if (outdated || abandoned) {
+                        Files.deleteIfExists(f.toPath());
+                    }
+                }
+            }
+            File archive = new File(d, name);
+            if (archive.isFile()) {
+                return new Archive(archive.getPath(), null);
+            }
+            return new Archive(archive.getPath(), new File(d, name + '.' + UUID.randomUUID() + ".tmp").getPath());
+        }
+
+        /** The JDK the Groovy launcher would pick, with symbolic links resolved. */
+        private File javaHome() throws IOException {
+            if (javaHome != null && !javaHome.isEmpty()) {
+                return new File(javaHome).getCanonicalFile();
+            }
+            if (path == null) {
+                return null;
+            }
+            for (String entry : path.split(File.pathSeparator)) {
+                File java = new File(entry, File.separatorChar == '\\' ? "java.exe" : "java");
+                if (java.isFile()) {
+                    return java.getCanonicalFile().getParentFile().getParentFile();
+                }
+            }
+            return null;
+        }
+
+    }
+
+    private static final class Commit extends MasterToSlaveCallable<Boolean, IOException> {
+
+        private static final long serialVersionUID = 1;
+
+        private final String dump;
+        private final String file;
+
+        Commit(String dump, String file) {
+            this.dump = dump;
+            this.file = file;
+        }
+
+        @Override
+        public Boolean call() throws IOException {
+            File tmp = new File(dump);
+            try {
+                if (tmp.length() == 0) {
+                    return false; // the JVM failed before it could dump anything
+                }
+                Files.move(tmp.toPath(), new File(file).toPath(), StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            } catch (FileAlreadyExistsException | AtomicMoveNotSupportedException x) {
+                return false; // a concurrent launch got there first
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+        }
+
+    }
+
+}
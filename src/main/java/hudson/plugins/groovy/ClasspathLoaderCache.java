@@ -0,0 +1,365 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Util;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Shares class loaders over the classpath entries of system Groovy scripts,
+ * so scripts using the same jars do not open them and define their classes again on every build.
+ * <p>Loaders are keyed by their parent and ordered entries, and reference counted.
+ * A jar is checked by size and modification time each time a loader is used; should those change, its SHA-256 digest is compared,
+ * and if that changed too the loader is retired, to be closed once no script uses it any more.
+ * Loaders no script uses are kept for reuse, up to {@link #MAX_IDLE} of them, closing the least recently used beyond that.
+ */
+@Restricted(NoExternalUse.class)
+public final class ClasspathLoaderCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ClasspathLoaderCache.class.getName());
+
+    /** Maximum number of loaders kept while no script uses them. */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "tunable from the script console")
+    public static /* not final */ int MAX_IDLE = SystemProperties.getInteger(ClasspathLoaderCache.class.getName() + ".maxIdle", 20);
+
+    private static final ClasspathLoaderCache INSTANCE = new ClasspathLoaderCache();
+
+    public static ClasspathLoaderCache get() {
+        return INSTANCE;
+    }
+
+    /** Access-ordered, so iteration starts from the least recently used loader. */
+    private final Map<Key, Loader> loaders = new LinkedHashMap<>(16, 0.75f, true);
+
+    private ClasspathLoaderCache() {}
+
+    /**
+     * Gets a loader over some entries, creating it if need be.
+     * Must be matched by a call to {@link #release}.
+     */
+    @NonNull Loader acquire(@NonNull List<URL> urls, @NonNull ClassLoader parent) throws IOException {
+        Key key = new Key(urls, parent);
+        Loader loader;
+        synchronized (this) {
+            loader = loaders.get(key);
+            if (loader != null) {
+                loader.users++;
+            }
+        }
+        if (loader != null) {
+            if (isCurrent(loader)) {
+                return loader;
+            }
+            release(loader);
+        }
+        List<Loader> toClose = new ArrayList<>();
+        try {
+            Loader fresh = new Loader(urls, parent);
+            synchronized (this) {
+                Loader existing = loaders.get(key);
+                if (existing != null && !existing.retired) {
+                    // somebody else created one meanwhile
+                    toClose.add(fresh);
+                    existing.users++;
+                    return existing;
+                }
+                loaders.put(key, fresh);
+                fresh.users++;
+                return fresh;
+            }
+        } finally {
+            for (Loader l : toClose) {
+                l.close();
+            }
+        }
+    }
+
+    void release(@NonNull Loader loader) {
+        List<Loader> toClose = new ArrayList<>();
+        synchronized (this) {
+            loader.users--;
+            if (loader.users == 0) {
+                if (loader.retired) {
+                    toClose.add(loader);
+                } else {
+                    trim(toClose);
+                }
+            }
+        }
+        for (Loader l : toClose) {
+            l.close();
+        }
+    }
+
+    /**
+     * Retires the least recently used of the loaders no script uses, beyond {@link #MAX_IDLE} of them.
+     */
+    private void trim(List<Loader> toClose) {
+        int idle = 0;
+        for (Loader loader : loaders.values()) {
+            if (loader.users == 0) {
+                idle++;
+            }
+        }
+        for (Iterator<Loader> it = loaders.values().iterator(); idle > MAX_IDLE && it.hasNext();) {
+            Loader loader = it.next();
+            if (loader.users == 0) {
+                it.remove();
+                retire(loader, toClose);
+                idle--;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a loader still reflects its jars, retiring it otherwise.
+     * Jars are read without holding the lock.
+     */
+    boolean isCurrent(@NonNull Loader loader) {
+        synchronized (this) {
+            if (loader.retired) {
+                return false;
+            }
+        }
+        boolean current = loader.isCurrent();
+        List<Loader> toClose = new ArrayList<>();
+        synchronized (this) {
+            if (!current && !loader.retired) {
+                if (loaders.get(loader.key) == loader) {
+                    loaders.remove(loader.key);
+                }
+                retire(loader, toClose);
+            }
+        }
+        for (Loader l : toClose) {
+            l.close();
+        }
+        return current;
+    }
+
+    private static void retire(Loader loader, List<Loader> toClose) {
+        loader.retired = true;
+        if (loader.users == 0) {
+            toClose.add(loader);
+        }
+    }
+
+    /**
+     * Drops all loaders not currently in use.
+     */
+    public void clear() {
+        List<Loader> toClose = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Loader> it = loaders.values().iterator(); it.hasNext();) {
+                Loader loader = it.next();
+                it.remove();
+                retire(loader, toClose);
+            }
+        }
+        for (Loader l : toClose) {
+            l.close();
+        }
+    }
+
+    /**
+     * For the statistics shown on the global configuration page.
+     */
+    public synchronized List<Loader> getLoaders() {
+        return new ArrayList<>(loaders.values());
+    }
+
+    private static final class Key {
+
+        final List<URL> urls;
+        final ClassLoader parent;
+
+        Key(List<URL> urls, ClassLoader parent) {
+            this.urls = new ArrayList<>(urls);
+            this.parent = parent;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            // URL.equals may resolve host names; compare the external forms instead
+            return parent == other.parent && toString().equals(other.toString());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(parent), toString());
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder();
+            for (URL url : urls) {
+                b.append(url.toExternalForm()).append('\n');
+            }
+            return b.toString();
+        }
+
+    }
+
+    /** What a jar looked like when the loader was created. */
+    private static final class Fingerprint {
+
+        final File file;
+        long lastModified;
+        long length;
+        final String digest;
+
+        Fingerprint(File file) throws IOException {
+            this.file = file;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.digest = digest(file);
+        }
+
+        synchronized boolean isCurrent() {
+            if (file.lastModified() == lastModified && file.length() == length) {
+                return true;
+            }
+            try {
+                if (digest.equals(digest(file))) {
+                    // touched but not changed
+                    lastModified = file.lastModified();
+                    length = file.length();
+                    return true;
+                }
+            } catch (IOException x) {
+                LOGGER.log(Level.FINE, "could not check " + file, x);
+            }
+            return false;
+        }
+
+        private static String digest(File file) throws IOException {
+            try (DigestInputStream is = new DigestInputStream(Files.newInputStream(file.toPath()), MessageDigest.getInstance("SHA-256"))) {
+                is.transferTo(OutputStream.nullOutputStream());
+                return Util.toHexString(is.getMessageDigest().digest());
+            } catch (NoSuchAlgorithmException x) {
+                throw new IllegalStateException(x);
+            }
+        }
+
+    }
+
+    /**
+     * A shared class loader, counting the classes it defines.
+     */
+    public static final class Loader {
+
+        final Key key;
+        private final Counting loader;
+        private final List<Fingerprint> fingerprints = new ArrayList<>();
+        /** Guarded by the cache. */
+        int users;
+        /** Guarded by the cache. */
+        boolean retired;
+
+        Loader(List<URL> urls, ClassLoader parent) throws IOException {
+            key = new Key(urls, parent);
+            for (URL url : urls) {
+                File f = toFile(url);
+                if (f != null && f.isFile()) {
+                    fingerprints.add(new Fingerprint(f));
+                }
+            }
+            loader = new Counting(urls.toArray(new URL[0]), parent);
+        }
+
+        private static @CheckForNull File toFile(URL url) {
+            if (!"file".equals(url.getProtocol())) {
+                return null;
+            }
+            try {
+                return new File(url.toURI());
+            } catch (URISyntaxException | IllegalArgumentException x) {
+                return null;
+            }
+        }
+
+        boolean isCurrent() {
+            for (Fingerprint fingerprint : fingerprints) {
+                if (!fingerprint.isCurrent()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @NonNull ClassLoader getClassLoader() {
+            return loader;
+        }
+
+        public List<URL> getUrls() {
+            return key.urls;
+        }
+
+        public int getClassCount() {
+            return loader.count.get();
+        }
+
+        public int getUsers() {
+            synchronized (INSTANCE) {
+                return users;
+            }
+        }
+
+        void close() {
+            try {
+                loader.close();
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "failed to close class loader over " + key.urls, x);
+            }
+        }
+
+    }
+
+    private static final class Counting extends URLClassLoader {
+
+        static {
+            registerAsParallelCapable();
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+
+        Counting(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            Class<?> c = super.findClass(name);
+            count.incrementAndGet();
+            return c;
+        }
+
+    }
+
+}
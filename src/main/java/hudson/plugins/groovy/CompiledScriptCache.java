@@ -0,0 +1,291 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.GroovyShell;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.RejectedAccessException;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.Whitelist;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.GroovySandbox;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.SecureGroovyScript;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.ClassLoaderWhitelist;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.ProxyWhitelist;
+import org.jenkinsci.plugins.scriptsecurity.scripts.ApprovalContext;
+import org.jenkinsci.plugins.scriptsecurity.scripts.ClasspathEntry;
+import org.jenkinsci.plugins.scriptsecurity.scripts.ScriptApproval;
+import org.jenkinsci.plugins.scriptsecurity.scripts.languages.GroovyLanguage;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Keeps compiled {@link SystemGroovy} scripts between builds,
+ * so running the same script again only has to recheck approvals rather than parse and compile it from scratch.
+ * <p>Entries are keyed by a digest of the script text, its classpath and the sandbox flag,
+ * and evicted in LRU order once there are more than {@link #MAX_ENTRIES} of them
+ * or their total weight (script length in characters) exceeds {@link #MAX_WEIGHT}.
+ * The class loaders of an evicted entry are closed as soon as no build is running the script any more,
+ * so its classes can be unloaded.
+ * <p>The compiled classes are shared by every build, of any job, running the same script,
+ * so static fields of classes the script declares, and anything cached in them, survive from one build to the next.
+ * Builders can opt out with {@link SystemGroovy#setCompileEachRun}.
+ */
+@Restricted(NoExternalUse.class)
+public final class CompiledScriptCache {
+
+    private static final Logger LOGGER = Logger.getLogger(CompiledScriptCache.class.getName());
+
+    /** Maximum number of cached scripts; 0 disables the cache. */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "tunable from the script console")
+    public static /* not final */ int MAX_ENTRIES = SystemProperties.getInteger(CompiledScriptCache.class.getName() + ".maxEntries", 100);
+
+    /** Maximum total length of cached scripts. */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "tunable from the script console")
+    public static /* not final */ long MAX_WEIGHT = SystemProperties.getLong(CompiledScriptCache.class.getName() + ".maxWeight", 5_000_000L);
+
+    private static final CompiledScriptCache INSTANCE = new CompiledScriptCache();
+
+    public static CompiledScriptCache get() {
+        return INSTANCE;
+    }
+
+    /** Access-ordered, so iteration starts from the least recently used entry. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private CompiledScriptCache() {}
+
+    Object evaluate(@NonNull SecureGroovyScript script, @NonNull ClassLoader loader, @NonNull Binding binding, @CheckForNull TaskListener listener) throws Exception {
+        return evaluate(script, loader, binding, listener, null);
+    }
+
+    /**
+     * Like {@link SecureGroovyScript#evaluate(ClassLoader, Binding, TaskListener)} but reusing a previously compiled script where possible.
+     * Script and classpath approvals are checked on every call.
+     * @param timer if not null, split into {@code compile} (including approval checks and cache lookup) and {@code execution} phases
+     */
+    Object evaluate(@NonNull SecureGroovyScript script, @NonNull ClassLoader loader, @NonNull Binding binding, @CheckForNull TaskListener listener, @CheckForNull PhaseTimer timer) throws Exception {
+        if (MAX_ENTRIES <= 0) {
+            if (timer != null) {
+                timer.start("compile and execution");
+            }
+            return script.evaluate(loader, binding, listener);
+        }
+        if (timer != null) {
+            timer.start("compile");
+        }
+        List<URL> urls = new ArrayList<>();
+        for (ClasspathEntry cpe : script.getClasspath()) {
+            ScriptApproval.get().using(cpe);
+            urls.add(cpe.getURL());
+        }
+        String text = script.isSandbox() ? script.getScript() : ScriptApproval.get().using(script.getScript(), GroovyLanguage.get());
+        Entry entry = acquire(script.isSandbox(), urls, text, loader);
+        if (timer != null) {
+            timer.start("execution");
+        }
+        try {
+            return entry.run(binding, listener);
+        } finally {
+            release(entry);
+        }
+    }
+
+    private Entry acquire(boolean sandbox, List<URL> urls, String text, ClassLoader parent) throws IOException {
+        String key = AbstractGroovy.digest(sandbox + "\n" + urls + "\n" + text);
+        Entry stale;
+        synchronized (this) {
+            stale = entries.get(key);
+            if (stale != null && stale.parent == parent) {
+                stale.users++; // so it is not closed while checked
+            } else {
+                stale = null;
+            }
+        }
+        // Checking the jars may read them, so not while holding the lock.
+        if (stale != null) {
+            if (stale.isCurrent()) {
+                synchronized (this) {
+                    hits++;
+                }
+                return stale;
+            }
+            release(stale);
+        }
+        synchronized (this) {
+            misses++;
+        }
+        // Compile outside the lock; should another build have compiled the same script meanwhile, keep the first one.
+        Entry fresh = new Entry(sandbox, urls, text, parent);
+        List<Entry> toClose = new ArrayList<>();
+        Entry result;
+        synchronized (this) {
+            Entry existing = entries.get(key);
+            if (existing != null && existing != stale && existing.parent == parent) {
+                toClose.add(fresh);
+                result = existing;
+            } else {
+                if (existing != null) {
+                    entries.remove(key);
+                    weight -= existing.weight;
+                    discard(existing, toClose);
+                }
+                entries.put(key, fresh);
+                weight += fresh.weight;
+                result = fresh;
+            }
+            result.users++;
+            Iterator<Entry> it = entries.values().iterator();
+            while ((entries.size() > MAX_ENTRIES || weight > MAX_WEIGHT) && it.hasNext()) {
+                Entry eldest = it.next();
+                it.remove();
+                weight -= eldest.weight;
+                evictions++;
+                discard(eldest, toClose);
+            }
+        }
+        for (Entry e : toClose) {
+            e.close();
+        }
+        return result;
+    }
+
+    private static void discard(Entry entry, List<Entry> toClose) {
+        entry.evicted = true;
+        if (entry.users == 0) {
+            toClose.add(entry);
+        }
+    }
+
+    private void release(Entry entry) {
+        boolean close;
+        synchronized (this) {
+            entry.users--;
+            close = entry.evicted && entry.users == 0;
+        }
+        if (close) {
+            entry.close();
+        }
+    }
+
+    /**
+     * Drops all cached scripts.
+     */
+    public void clear() {
+        List<Entry> toClose = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                discard(entry, toClose);
+            }
+            entries.clear();
+            weight = 0;
+        }
+        for (Entry e : toClose) {
+            e.close();
+        }
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private static final class Entry {
+
+        final boolean sandbox;
+        final ClassLoader parent;
+        final long weight;
+        /** Shared with other scripts using the same classpath. */
+        private final ClasspathLoaderCache.Loader classpathLoader;
+        private final GroovyClassLoader loader;
+        private final Class<?> scriptClass;
+        /** Guarded by the cache. */
+        int users;
+        /** Guarded by the cache. */
+        boolean evicted;
+
+        Entry(boolean sandbox, List<URL> urls, String text, ClassLoader parent) throws IOException {
+            this.sandbox = sandbox;
+            this.parent = parent;
+            this.weight = text.length();
+            classpathLoader = urls.isEmpty() ? null : ClasspathLoaderCache.get().acquire(urls, parent);
+            loader = new GroovyClassLoader(GroovySandbox.createSecureClassLoader(classpathLoader != null ? classpathLoader.getClassLoader() : parent),
+                    sandbox ? GroovySandbox.createSecureCompilerConfiguration() : GroovySandbox.createBaseCompilerConfiguration());
+            try {
+                scriptClass = loader.parseClass(new GroovyCodeSource(text, "Script1.groovy", GroovyShell.DEFAULT_CODE_BASE));
+            } catch (RuntimeException | LinkageError x) {
+                close();
+                throw x;
+            }
+        }
+
+        /**
+         * Whether the jars this script was compiled against are unchanged.
+         */
+        boolean isCurrent() {
+            return classpathLoader == null || ClasspathLoaderCache.get().isCurrent(classpathLoader);
+        }
+
+        Object run(Binding binding, @CheckForNull TaskListener listener) {
+            if (!sandbox) {
+                return InvokerHelper.createScript(scriptClass, binding).run();
+            }
+            GroovySandbox groovySandbox = new GroovySandbox()
+                    .withWhitelist(new ProxyWhitelist(new ClassLoaderWhitelist(loader), Whitelist.all()))
+                    .withTaskListener(listener);
+            try (GroovySandbox.Scope scope = groovySandbox.enter()) {
+                return InvokerHelper.createScript(scriptClass, binding).run();
+            } catch (RejectedAccessException x) {
+                throw ScriptApproval.get().accessRejected(x, ApprovalContext.create());
+            }
+        }
+
+        void close() {
+            for (Class<?> c : loader.getLoadedClasses()) {
+                InvokerHelper.removeClass(c);
+            }
+            loader.clearCache();
+            try {
+                loader.close();
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "failed to close class loader of a cached script", x);
+            }
+            if (classpathLoader != null) {
+                ClasspathLoaderCache.get().release(classpathLoader);
+            }
+        }
+
+    }
+
+}
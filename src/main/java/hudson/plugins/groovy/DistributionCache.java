@@ -0,0 +1,177 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.ProxyConfiguration;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.tools.DownloadFromUrlInstaller;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipFile;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Keeps Groovy distributions downloaded by {@link GroovyInstaller} on the controller,
+ * under {@code $JENKINS_HOME/caches/groovy-plugin/distributions}, and pushes them to agents over their channel,
+ * so a fleet of new agents causes a single download rather than one each.
+ * <p>Every cached zip has a {@code .sha256} sidecar written when it was downloaded.
+ * The zip is checked against it the first time it is used after a restart, and downloaded again should they not match.
+ * At most {@link Groovy.DescriptorImpl#getMaxConcurrentPushes} distributions are pushed to agents at once.
+ */
+@Restricted(NoExternalUse.class)
+public final class DistributionCache {
+
+    private static final DistributionCache INSTANCE = new DistributionCache();
+
+    public static DistributionCache get() {
+        return INSTANCE;
+    }
+
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+    /** Zips checked against their sidecar since startup. */
+    private final Set<File> verified = ConcurrentHashMap.newKeySet();
+    private Semaphore pushes;
+    private int pushLimit;
+    private long downloads;
+
+    private DistributionCache() {}
+
+    File getDirectory() {
+        return new File(Jenkins.get().getRootDir(), "caches/groovy-plugin/distributions");
+    }
+
+    /**
+     * Gets a verified local copy of a distribution, downloading it if necessary.
+     */
+    @NonNull File fetch(@NonNull DownloadFromUrlInstaller.Installable inst, @NonNull TaskListener log) throws IOException, InterruptedException {
+        File zip = new File(getDirectory(), Util.getDigestOf(inst.url) + ".zip");
+        File sidecar = new File(zip.getPath() + ".sha256");
+        synchronized (locks.computeIfAbsent(zip.getPath(), k -> new Object())) {
+            if (verified.contains(zip) && zip.isFile()) {
+                return zip;
+            }
+            if (zip.isFile() && sidecar.isFile()) {
+                String expected = Files.readString(sidecar.toPath(), StandardCharsets.US_ASCII).trim();
+                if (expected.equals(digest(zip))) {
+                    verified.add(zip);
+                    return zip;
+                }
+                log.getLogger().println("Cached copy of " + inst.url + " is corrupt, downloading it again");
+            }
+            log.getLogger().println("Downloading " + inst.url + " to the controller cache");
+            Files.createDirectories(zip.getParentFile().toPath());
+            Path tmp = Files.createTempFile(zip.getParentFile().toPath(), "download", ".tmp");
+            try {
+                MessageDigest md = sha256();
+                try (InputStream is = ProxyConfiguration.open(new URL(inst.url)).getInputStream();
+                     OutputStream os = new DigestOutputStream(Files.newOutputStream(tmp), md)) {
+                    is.transferTo(os);
+                }
+                try (ZipFile check = new ZipFile(tmp.toFile())) {
+                    if (check.size() == 0) {
+                        throw new IOException(inst.url + " is an empty archive");
+                    }
+                }
+                Files.writeString(sidecar.toPath(), Util.toHexString(md.digest()), StandardCharsets.US_ASCII);
+                Files.move(tmp, zip.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            synchronized (this) {
+                downloads++;
+            }
+            verified.add(zip);
+            return zip;
+        }
+    }
+
+    /**
+     * Unpacks a cached distribution into a tool directory, wherever it is.
+     */
+    void push(@NonNull File zip, @NonNull FilePath expected, @NonNull TaskListener log, int maxConcurrentPushes) throws IOException, InterruptedException {
+        Semaphore semaphore = semaphore(maxConcurrentPushes);
+        if (!semaphore.tryAcquire()) {
+            log.getLogger().println("Waiting for other Groovy installations to be pushed from the controller");
+            semaphore.acquire();
+        }
+        try {
+            expected.mkdirs();
+            expected.deleteContents();
+            try (InputStream is = Files.newInputStream(zip.toPath())) {
+                expected.unzipFrom(is);
+            }
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    private synchronized Semaphore semaphore(int limit) {
+        if (pushes == null || pushLimit != limit) {
+            // pushes already under way keep the permits of the previous semaphore
+            pushes = new Semaphore(Math.max(limit, 1), true);
+            pushLimit = limit;
+        }
+        return pushes;
+    }
+
+    public synchronized long getDownloads() {
+        return downloads;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException x) {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    private static String digest(File file) throws IOException {
+        try (DigestInputStream is = new DigestInputStream(Files.newInputStream(file.toPath()), sha256())) {
+            is.transferTo(OutputStream.nullOutputStream());
+            return Util.toHexString(is.getMessageDigest().digest());
+        }
+    }
+
+    /**
+     * Makes everything in {@code bin} executable, as the zip format does not keep permissions.
+     */
+    static final class ChmodBin extends MasterToSlaveFileCallable<Void> {
+
+        private static final long serialVersionUID = 1;
+
+        @Override
+        public Void invoke(File home, VirtualChannel channel) {
+            File[] files = new File(home, "bin").listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    if (f.isFile()) {
+                        f.setExecutable(true, false);
+                    }
+                }
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -3,10 +3,22 @@ package hudson.plugins.groovy;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.Descriptor;
 import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.SystemProperties;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.SecureGroovyScript;
 import org.jenkinsci.plugins.scriptsecurity.scripts.ApprovalContext;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -28,11 +40,106 @@ public class FileSystemScriptSource extends SystemScriptSource {
     public SecureGroovyScript getSecureGroovyScript(FilePath projectWorkspace, AbstractBuild<?, ?> build, TaskListener listener) throws IOException, InterruptedException {
         EnvVars env = build.getEnvironment(listener);
         String expandedScriptFile = env.expand(this.scriptFile);
-        String text = new FilePath(projectWorkspace, expandedScriptFile).readToString();
-        try {
-            return new SecureGroovyScript(text, true, null).configuring(ApprovalContext.create()/* unused but just in case: */.withItem(build.getParent()));
-        } catch (Descriptor.FormException e) {
-            throw new RuntimeException(e);
+        FilePath file = new FilePath(projectWorkspace, expandedScriptFile);
+        String key = build.getParent().getFullName() + '\n' + build.getBuiltOnStr() + '\n' + file.getRemote();
+        Loaded loaded;
+        synchronized (LOADED) {
+            loaded = LOADED.get(key);
+        }
+        Snapshot snapshot = file.act(new TakeSnapshot(loaded != null ? loaded.snapshot : null));
+        SecureGroovyScript script;
+        if (snapshot.content == null && loaded != null) {
+            script = loaded.script;
+        } else {
+            String text = new String(snapshot.content, Charset.defaultCharset());
+            try {
+                script = new SecureGroovyScript(text, true, null).configuring(ApprovalContext.create()/* unused but just in case: */.withItem(build.getParent()));
+            } catch (Descriptor.FormException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        synchronized (LOADED) {
+            LOADED.put(key, new Loaded(snapshot.withoutContent(), script));
+        }
+        return script;
+    }
+
+    private static final int MAX_LOADED = SystemProperties.getInteger(FileSystemScriptSource.class.getName() + ".maxLoaded", 100);
+
+    /**
+     * Scripts loaded recently, by job, node and path, so that an unchanged file is neither transferred nor parsed again.
+     */
+    private static final Map<String, Loaded> LOADED = new LinkedHashMap<String, Loaded>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Loaded> eldest) {
+            return size() > MAX_LOADED;
+        }
+    };
+
+    private static final class Loaded {
+        final Snapshot snapshot;
+        final SecureGroovyScript script;
+        Loaded(Snapshot snapshot, SecureGroovyScript script) {
+            this.snapshot = snapshot;
+            this.script = script;
+        }
+    }
+
+    /**
+     * State of a script file on the agent.
+     */
+    private static final class Snapshot implements Serializable {
+        private static final long serialVersionUID = 1;
+        final long lastModified;
+        final long length;
+        /** Agent clock when the snapshot was taken. */
+        final long taken;
+        final String digest;
+        /** Null if unchanged from the previous snapshot. */
+        final byte[] content;
+        Snapshot(long lastModified, long length, long taken, String digest, byte[] content) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.taken = taken;
+            this.digest = digest;
+            this.content = content;
+        }
+        Snapshot withoutContent() {
+            return new Snapshot(lastModified, length, taken, digest, null);
+        }
+    }
+
+    /**
+     * Reads a script file unless it is known to be unchanged.
+     * A matching timestamp and size is trusted only if the file had not been modified shortly before the previous snapshot
+     * (the file system clock may be too coarse to notice a second edit); otherwise the content digest decides.
+     */
+    private static final class TakeSnapshot extends MasterToSlaveFileCallable<Snapshot> {
+        private static final long serialVersionUID = 1;
+        private static final long RACY_MILLIS = 2000;
+        private final Snapshot previous;
+        TakeSnapshot(Snapshot previous) {
+            this.previous = previous;
+        }
+        @Override
+        public Snapshot invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+            long taken = System.currentTimeMillis();
+            long lastModified = f.lastModified();
+            long length = f.length();
+            if (previous != null && previous.lastModified == lastModified && previous.length == length && lastModified < previous.taken - RACY_MILLIS) {
+                return new Snapshot(lastModified, length, taken, previous.digest, null);
+            }
+            byte[] content = Files.readAllBytes(f.toPath());
+            String digest;
+            try {
+                digest = Util.toHexString(MessageDigest.getInstance("SHA-256").digest(content));
+            } catch (NoSuchAlgorithmException x) {
+                throw new IOException(x);
+            }
+            if (previous != null && previous.digest.equals(digest)) {
+                return new Snapshot(lastModified, length, taken, digest, null);
+            }
+            return new Snapshot(lastModified, length, taken, digest, content);
         }
     }
 
@@ -0,0 +1,287 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import groovy.lang.Writable;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.remoting.Which;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.apache.ivy.util.extendable.ExtendableItem;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Resolves {@code @Grab} dependencies ahead of the build into a grape root on the controller,
+ * under {@code $JENKINS_HOME/caches/groovy-grapes}, and copies what an agent lacks of it to the same place under the agent root,
+ * for the launched JVM to be pointed at with {@code -Dgrape.root}.
+ * <p>Only dependencies listed by an administrator in the global configuration, see {@link Groovy.DescriptorImpl#getPrefetchedGrapes},
+ * are ever resolved here: Grape runs global AST transformations found in the jars it grabs,
+ * so resolving on the controller whatever a job asks for would let anyone configuring a job run code there.
+ * Scripts are not looked at; they still resolve anything else they grab themselves, on the agent.
+ * <p>Dependencies are resolved by Grape itself, using the Groovy and Ivy of the controller in a separate JVM, so the layout is exactly what Grape expects.
+ * Resolution goes to the repositories of the default Grape configuration,
+ * unless {@link #CONFIG} names another Grape configuration, e.g. one using only a local file repository.
+ * Agents only get the files of the requested dependencies, as recorded when they were resolved.
+ * <p>Needs the Pipeline: Shared Groovy Libraries plugin, which provides Ivy.
+ */
+@Restricted(NoExternalUse.class)
+public final class GrapeCache {
+
+    static final String DIRECTORY = "caches/groovy-grapes";
+
+    /** A Grape configuration file on the controller to resolve with, as {@code grape.config}. */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "tunable from the script console")
+    public static /* not final */ String CONFIG = SystemProperties.getString(GrapeCache.class.getName() + ".config");
+
+    /** {@code group:module:version}, optionally followed by {@code :classifier}. */
+    private static final Pattern COORDINATE = Pattern.compile("[\\w.-]+:[\\w.-]+:[\\w.+*-]+(?::[\\w.-]+)?");
+
+    private static final GrapeCache INSTANCE = new GrapeCache();
+
+    public static GrapeCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Lists the jars Grape added to the class loaders of the resolving script which are in its grape root, to the file named by the first argument.
+     */
+    private static final String LIST_JARS =
+            "def root = new File(System.getProperty('grape.root')).canonicalFile.toPath()\n"
+            + "def jars = new TreeSet()\n"
+            + "for (def l = getClass().classLoader; l != null; l = l.parent) {\n"
+            + "  if (l instanceof URLClassLoader) {\n"
+            + "    for (def u in l.URLs) {\n"
+            + "      def f = u.protocol == 'file' ? new File(u.toURI()).canonicalFile.toPath() : null\n"
+            + "      if (f != null && f.startsWith(root)) { jars << root.relativize(f).toString().replace(File.separatorChar, '/' as char) }\n"
+            + "    }\n"
+            + "  }\n"
+            + "}\n"
+            + "new File(args[0]).setText(jars.join('\\n'), 'UTF-8')\n";
+
+    /** By digest of the coordinates, so a given set of dependencies is only resolved once at a time, without holding up others. */
+    private final Map<String, Object> resolving = new ConcurrentHashMap<>();
+    /** By node name, so one agent gets one copy at a time. */
+    private final Map<String, Object> syncing = new ConcurrentHashMap<>();
+
+    private GrapeCache() {}
+
+    /**
+     * Whether some text is a coordinate Grape accepts, and which is safe to put in a {@code @Grab} annotation.
+     */
+    static boolean isCoordinate(@NonNull String coordinate) {
+        return COORDINATE.matcher(coordinate).matches();
+    }
+
+    /**
+     * Parses a list of coordinates, one per line, ignoring blank lines and those starting with {@code #}.
+     */
+    static @NonNull List<String> parse(@CheckForNull String coordinates) {
+        List<String> list = new ArrayList<>();
+        if (coordinates != null) {
+            for (String line : coordinates.split("\\R")) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    list.add(line);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * The dependencies an administrator allows to be prefetched.
+     */
+    static @NonNull List<String> allowed() {
+        Groovy.DescriptorImpl descriptor = Jenkins.get().getDescriptorByType(Groovy.DescriptorImpl.class);
+        List<String> allowed = new ArrayList<>();
+        for (String coordinate : parse(descriptor != null ? descriptor.getPrefetchedGrapes() : null)) {
+            if (isCoordinate(coordinate)) {
+                allowed.add(coordinate);
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * Makes sure dependencies are available on a node.
+     * @param coordinates {@code group:module:version} coordinates; only those {@link #allowed} are prefetched, others are skipped with a warning
+     * @return the grape root on the node, or null if there is nothing to prefetch or it could not be done, as explained in the log
+     */
+    @CheckForNull FilePath prefetch(@NonNull List<String> coordinates, @NonNull Node node, @NonNull TaskListener listener) throws IOException, InterruptedException {
+        List<String> allowed = allowed();
+        List<String> wanted = new ArrayList<>();
+        for (String coordinate : coordinates) {
+            if (allowed.contains(coordinate)) {
+                wanted.add(coordinate);
+            } else {
+                listener.getLogger().println("[GROOVY WARNING] Not prefetching " + coordinate + ", which is not among the @Grab dependencies to prefetch of the global configuration");
+            }
+        }
+        if (wanted.isEmpty()) {
+            return null;
+        }
+        FilePath root = node.getRootPath();
+        if (root == null) {
+            return null;
+        }
+        File local = new File(Jenkins.get().getRootDir(), DIRECTORY);
+        List<String> files = resolve(wanted, local, listener);
+        if (files == null) {
+            return null;
+        }
+        FilePath target = root.child(DIRECTORY);
+        if (target.getChannel() == FilePath.localChannel && new File(target.getRemote()).getCanonicalFile().equals(local.getCanonicalFile())) {
+            return target;
+        }
+        synchronized (syncing.computeIfAbsent(node.getNodeName(), k -> new Object())) {
+            Map<String, Long> present = target.act(new Sizes(files));
+            Map<String, Long> expected = new Sizes(files).invoke(local, FilePath.localChannel);
+            List<String> missing = new ArrayList<>();
+            for (Map.Entry<String, Long> entry : expected.entrySet()) {
+                if (!entry.getValue().equals(present.get(entry.getKey()))) {
+                    missing.add(entry.getKey());
+                }
+            }
+            if (!missing.isEmpty()) {
+                listener.getLogger().println("Copying " + missing.size() + " Grape files to " + node.getDisplayName());
+                new FilePath(local).copyRecursiveTo(String.join(",", missing), target);
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Resolves dependencies into the controller cache, unless done before.
+     * @return the files of the dependencies, relative to the grape root, or null if they could not be resolved
+     */
+    private @CheckForNull List<String> resolve(List<String> coordinates, File local, TaskListener listener) throws IOException, InterruptedException {
+        String key = Util.getDigestOf(String.join("\n", new TreeSet<>(coordinates)));
+        File marker = new File(local, "resolved/" + key);
+        if (marker.isFile()) {
+            return Files.readAllLines(marker.toPath(), StandardCharsets.UTF_8);
+        }
+        synchronized (resolving.computeIfAbsent(key, k -> new Object())) {
+            if (marker.isFile()) {
+                return Files.readAllLines(marker.toPath(), StandardCharsets.UTF_8);
+            }
+            File ivy;
+            try {
+                ivy = Which.jarFile(ExtendableItem.class);
+            } catch (NoClassDefFoundError x) {
+                listener.getLogger().println("[GROOVY WARNING] @Grab dependencies cannot be prefetched unless the plugin Pipeline: Shared Groovy Libraries is enabled");
+                return null;
+            }
+            StringBuilder script = new StringBuilder();
+            int i = 0;
+            for (String coordinate : coordinates) {
+                // one import each, since annotations may not be repeated; coordinates are checked, so need no quoting
+                script.append("@Grab('").append(coordinate).append("') import java.lang.Object as _grape").append(i++).append('\n');
+            }
+            script.append(LIST_JARS);
+            Files.createDirectories(marker.getParentFile().toPath());
+            File jars = new File(marker.getPath() + '.' + UUID.randomUUID() + ".tmp");
+            List<String> cmd = new ArrayList<>();
+            cmd.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+            cmd.add("-Dgrape.root=" + local.getPath());
+            if (CONFIG != null) {
+                cmd.add("-Dgrape.config=" + CONFIG);
+            }
+            cmd.add("-cp");
+            cmd.add(Which.jarFile(Writable.class).getPath() + File.pathSeparator + ivy.getPath());
+            cmd.add("groovy.ui.GroovyMain");
+            cmd.add("-e");
+            cmd.add(script.toString());
+            cmd.add(jars.getPath());
+            listener.getLogger().println("Resolving @Grab dependencies on the controller");
+            try {
+                int result = new Launcher.LocalLauncher(listener).launch().cmds(cmd).stdout(listener).pwd(local).join();
+                if (result != 0 || !jars.isFile()) {
+                    listener.getLogger().println("[GROOVY WARNING] Could not resolve @Grab dependencies on the controller, leaving them to the script");
+                    return null;
+                }
+                List<String> files = moduleFiles(local, Files.readAllLines(jars.toPath(), StandardCharsets.UTF_8));
+                Files.write(jars.toPath(), files, StandardCharsets.UTF_8);
+                Files.move(jars.toPath(), marker.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                return files;
+            } finally {
+                Files.deleteIfExists(jars.toPath());
+            }
+        }
+    }
+
+    /**
+     * Adds the Ivy files Grape needs to find resolved jars in its cache again.
+     * @param jars paths relative to the grape root, such as {@code grapes/group/module/jars/module-version.jar}
+     */
+    static @NonNull List<String> moduleFiles(@NonNull File root, @NonNull List<String> jars) {
+        List<String> files = new ArrayList<>();
+        for (String jar : jars) {
+            if (jar.isEmpty()) {
+                continue;
+            }
+            files.add(jar);
+            int slash = jar.lastIndexOf('/');
+            String moduleDir = jar.substring(0, Math.max(jar.lastIndexOf('/', slash - 1), 0));
+            String module = moduleDir.substring(moduleDir.lastIndexOf('/') + 1);
+            String name = jar.substring(slash + 1);
+            if (!name.startsWith(module + '-') || !name.endsWith(".jar")) {
+                continue;
+            }
+            String version = name.substring(module.length() + 1, name.length() - ".jar".length());
+            for (String ivyFile : new String[] {"ivy-" + version + ".xml", "ivy-" + version + ".xml.original", "ivydata-" + version + ".properties"}) {
+                String path = moduleDir + '/' + ivyFile;
+                if (new File(root, path).isFile()) {
+                    files.add(path);
+                }
+            }
+        }
+        return files;
+    }
+
+    /** Sizes of some files of the grape root, by path, leaving out those which do not exist. */
+    private static final class Sizes extends MasterToSlaveFileCallable<Map<String, Long>> {
+
+        private static final long serialVersionUID = 1;
+
+        private final List<String> files;
+
+        Sizes(List<String> files) {
+            this.files = new ArrayList<>(files);
+        }
+
+        @Override
+        public Map<String, Long> invoke(File f, VirtualChannel channel) {
+            Map<String, Long> sizes = new HashMap<>();
+            for (String path : files) {
+                File file = new File(f, path);
+                if (file.isFile()) {
+                    sizes.put(path, file.length());
+                }
+            }
+            return sizes;
+        }
+
+    }
+
+}
@@ -1,18 +1,23 @@
 package hudson.plugins.groovy;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.StringTokenizer;
 
-import org.apache.commons.exec.CommandLine;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest2;
 
+import hudson.AbortException;
 import hudson.CopyOnWrite;
 import hudson.EnvVars;
 import hudson.Extension;
@@ -24,7 +29,9 @@ import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
 import hudson.model.Computer;
 import hudson.model.Node;
-import hudson.model.ParametersAction;
+import hudson.model.Project;
+import hudson.remoting.VirtualChannel;
+import hudson.util.FormValidation;
 import hudson.util.VariableResolver;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
@@ -46,6 +53,46 @@ public class Groovy extends AbstractGroovy {
 
     private String classPath;  //for user convenience when added more item into class path not have to deal with path separator
 
+    private boolean daemon;    // run in a reusable worker JVM rather than forking a new one
+
+    private LaunchProfile launchProfile;
+
+    private boolean precompile; // compile once with groovyc and run the cached classes with java
+
+    private boolean prefetchGrapes; // resolve @Grab dependencies on the controller ahead of the launch
+
+    private boolean skipUnchanged; // restore the outputs of the last successful run rather than launching, if nothing changed since
+    private String inputs;         // Ant patterns of workspace files the script reads
+    private String outputs;        // Ant patterns of workspace files the script writes
+
+    /**
+     * Java options tuned for short-lived Groovy JVMs, put into {@code JAVA_OPTS} ahead of {@link #getJavaOpts}, which may override them.
+     */
+    public enum LaunchProfile {
+        DEFAULT("Default", ""),
+        FAST_START("Fast start (C1 only, serial GC)", "-XX:TieredStopAtLevel=1 -XX:+UseSerialGC -Xshare:auto"),
+        SMALL_HEAP("Small heap (serial GC, 256 MB maximum heap)", "-XX:+UseSerialGC -Xms32m -Xmx256m -Xss512k");
+
+        private final String displayName;
+        private final String javaOpts;
+
+        LaunchProfile(String displayName, String javaOpts) {
+            this.displayName = displayName;
+            this.javaOpts = javaOpts;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        String getJavaOpts() {
+            return javaOpts;
+        }
+    }
+
+    /** Runs a script piped in on standard input, passing on the script parameters. */
+    static final String STDIN_BOOTSTRAP = "new GroovyShell(getClass().classLoader).run(System.in.getText('UTF-8'), 'script.groovy', args)";
+
     @DataBoundConstructor
     public Groovy(ScriptSource scriptSource, String groovyName, String parameters,
             String scriptParameters, String properties, String javaOpts, String classPath) {
@@ -68,47 +115,89 @@ public class Groovy extends AbstractGroovy {
 
         FilePath ws = build.getWorkspace();
         FilePath script = null;
+        PhaseTimer timer = new PhaseTimer("Groovy");
+        timer.context(build);
+        if (scriptSource instanceof StringScriptSource) {
+            timer.script(((StringScriptSource) scriptSource).getCommand());
+        }
+        // inline scripts may be piped in, avoiding any workspace I/O; not supported by cmd.exe quoting or by daemons, which need a file
+        String stdin = scriptSource instanceof StringScriptSource && ((StringScriptSource) scriptSource).isStdin() && launcher.isUnix() && !daemon && !precompile
+                ? ((StringScriptSource) scriptSource).getCommand() : null;
         try {
-            script = scriptSource.getScriptFile(ws,build,listener);
+            timer.start("script");
+            if (stdin == null) {
+                script = scriptSource.getScriptFile(ws,build,listener);
+            }
         } catch (IOException e) {
             Util.displayIOException(e, listener);
             e.printStackTrace(listener.fatalError("Unable to produce a script file"));
             return false;
         }
         try {
-            List<String> cmd = buildCommandLine(build,listener,script,launcher.isUnix());
-
             int result;
+            ClassDataSharing.Archive archive = null;
             try {
-                Map<String,String> envVars = build.getEnvironment(listener);
-                hudson.plugins.groovy.GroovyInstallation installation = getGroovy();
-                if(installation != null) {
-                    Node node = Computer.currentComputer().getNode();
-                    if (node != null) {
-                        installation = installation.forNode(node, listener);
+                timer.start("installation");
+                EnvVars env = buildEnvironment(build, listener);
+                String executable = buildExecutable(listener, env, launcher.getChannel());
+                Map<String,String> envVars = buildLaunchEnvironment(build, listener, env);
+
+                timer.start("command line");
+                List<String> cmd = daemon ? null : stdin != null ? buildStdinCommandLine(build, executable, env) : buildCommandLine(build, executable, env, script, launcher.isUnix());
+                BuildAvoidance avoidance = null;
+                Node node = Computer.currentComputer().getNode();
+                FilePath root = node != null ? node.getRootPath() : null;
+                if (skipUnchanged && root != null) {
+                    timer.start("up-to-date check");
+                    avoidance = BuildAvoidance.prepare(root, ws, build.getParent().getFullName(), builderIndex(build), script, stdin,
+                            cmd != null ? cmd : buildCommandLine(build, executable, env, script, launcher.isUnix()), envVars.get("JAVA_OPTS"), inputs, outputs);
+                    if (avoidance.restore(listener)) {
+                        timer.record(build, listener);
+                        return true;
                     }
-                    envVars.put("GROOVY_HOME", installation.getHome());
                 }
-
-                for(Map.Entry<String,String> e : build.getBuildVariables().entrySet()){
-                    envVars.put(e.getKey(),e.getValue());
+                if (prefetchGrapes) {
+                    timer.start("grapes");
+                    prefetchGrapes(listener, envVars);
+                }
+                if (precompile && !daemon) {
+                    timer.start("compile");
+                    List<String> precompiled = buildPrecompiledCommandLine(build, listener, env, launcher, script, envVars);
+                    if (precompiled != null) {
+                        cmd = precompiled;
+                    }
+                } else if (!daemon) {
+                    archive = prepareClassDataSharing(listener, envVars);
                 }
 
-                String origJavaOpts = build.getBuildVariables().get("JAVA_OPTS");
-                StringBuilder javaOpts = new StringBuilder((origJavaOpts != null) ? origJavaOpts : "");
-                //Add javaOpts at the end
-                if(this.javaOpts != null) //backward compatibility
-                    javaOpts.append(' ').append(this.javaOpts);
-                envVars.put("JAVA_OPTS", javaOpts.toString());
-            
-                envVars.put("$PATH_SEPARATOR",":::"); //TODO why??
-
-                result = launcher.launch().cmds(cmd.toArray(new String[] {})).envs(envVars).stdout(listener).pwd(ws).join();
+                timer.start("execution");
+                if (daemon) {
+                    DescriptorImpl descriptor = (DescriptorImpl) getDescriptor();
+                    result = GroovyDaemon.run(launcher, listener, ws, envVars,
+                            buildGroovyCommand(executable, env, launcher.isUnix()),
+                            script, buildScriptParameters(build, scriptParameters, env),
+                            descriptor.getDaemonMaxRuns(), descriptor.getDaemonMaxHeap());
+                } else if (stdin != null) {
+                    result = launcher.launch().cmds(cmd).envs(envVars).stdin(new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8))).stdout(listener).pwd(ws).join();
+                } else {
+                    result = launcher.launch().cmds(cmd.toArray(new String[] {})).envs(envVars).stdout(listener).pwd(ws).join();
+                }
+                if (result == 0 && avoidance != null) {
+                    timer.start("outputs");
+                    avoidance.save(listener);
+                }
+            } catch (AbortException e) {
+                listener.error(e.getMessage());
+                result = -1;
             } catch (IOException e) {
                 Util.displayIOException(e,listener);
                 e.printStackTrace( listener.fatalError("command execution failed") );
                 result = -1;
             }
+            if (archive != null) {
+                archive.commit(launcher.getChannel(), listener);
+            }
+            timer.record(build, listener);
             return result==0;
         } finally {
             try {
@@ -127,6 +216,18 @@ public class Groovy extends AbstractGroovy {
 
         private boolean allowMacro;
 
+        static final int DEFAULT_DAEMON_MAX_RUNS = 100;
+        static final int DEFAULT_DAEMON_MAX_HEAP = 75;
+        static final int DEFAULT_MAX_CONCURRENT_PUSHES = 4;
+
+        private int daemonMaxRuns = DEFAULT_DAEMON_MAX_RUNS;
+        private int daemonMaxHeap = DEFAULT_DAEMON_MAX_HEAP;
+        private boolean distributionCache;
+        private int maxConcurrentPushes = DEFAULT_MAX_CONCURRENT_PUSHES;
+        private boolean prewarm;
+        private boolean prewarmVersion;
+        private String prefetchedGrapes;
+
         @CopyOnWrite
         private volatile GroovyInstallation[] installations = new GroovyInstallation[0];
 
@@ -154,6 +255,99 @@ public class Groovy extends AbstractGroovy {
             return allowMacro;
         }
 
+        /* for benchmarks */ void setAllowMacro(boolean allowMacro) {
+            this.allowMacro = allowMacro;
+        }
+
+        /**
+         * For the statistics shown on the global configuration page.
+         */
+        public CompiledScriptCache getCompiledScriptCache() {
+            return CompiledScriptCache.get();
+        }
+
+        public List<ClasspathLoaderCache.Loader> getClasspathLoaders() {
+            return ClasspathLoaderCache.get().getLoaders();
+        }
+
+        public long getMacroMemoHits() {
+            return TokenMacroMemo.getHits();
+        }
+
+        /**
+         * Number of scripts a Groovy daemon may run before it is replaced by a fresh JVM.
+         */
+        public int getDaemonMaxRuns() {
+            return daemonMaxRuns > 0 ? daemonMaxRuns : DEFAULT_DAEMON_MAX_RUNS;
+        }
+
+        /**
+         * Percentage of its maximum heap a Groovy daemon may use after a script before it is replaced by a fresh JVM.
+         */
+        public int getDaemonMaxHeap() {
+            return daemonMaxHeap > 0 && daemonMaxHeap <= 100 ? daemonMaxHeap : DEFAULT_DAEMON_MAX_HEAP;
+        }
+
+        /**
+         * Whether {@link GroovyInstaller} downloads distributions once to the controller and pushes them to agents from there.
+         */
+        public boolean isDistributionCache() {
+            return distributionCache;
+        }
+
+        /* for tests */ void setDistributionCache(boolean distributionCache) {
+            this.distributionCache = distributionCache;
+        }
+
+        /**
+         * Number of agents a cached distribution may be pushed to at once.
+         */
+        public int getMaxConcurrentPushes() {
+            return maxConcurrentPushes > 0 ? maxConcurrentPushes : DEFAULT_MAX_CONCURRENT_PUSHES;
+        }
+
+        /**
+         * Whether Groovy installations are prepared on agents as soon as they connect, see {@link InstallationPrewarm}.
+         */
+        public boolean isPrewarm() {
+            return prewarm;
+        }
+
+        /* for tests */ void setPrewarm(boolean prewarm) {
+            this.prewarm = prewarm;
+        }
+
+        /**
+         * Whether preparing an installation includes running {@code groovy --version}.
+         */
+        public boolean isPrewarmVersion() {
+            return prewarmVersion;
+        }
+
+        /* for tests */ void setPrewarmVersion(boolean prewarmVersion) {
+            this.prewarmVersion = prewarmVersion;
+        }
+
+        /**
+         * The {@code @Grab} dependencies which may be prefetched, see {@link GrapeCache}, one {@code group:module:version} per line.
+         */
+        public String getPrefetchedGrapes() {
+            return prefetchedGrapes;
+        }
+
+        /* for tests */ void setPrefetchedGrapes(String prefetchedGrapes) {
+            this.prefetchedGrapes = Util.fixEmptyAndTrim(prefetchedGrapes);
+        }
+
+        public FormValidation doCheckPrefetchedGrapes(@QueryParameter String value) {
+            for (String coordinate : GrapeCache.parse(value)) {
+                if (!GrapeCache.isCoordinate(coordinate)) {
+                    return FormValidation.error("Not a group:module:version coordinate: " + coordinate);
+                }
+            }
+            return FormValidation.ok();
+        }
+
         @Override
         public String getDisplayName() {
             return "Execute Groovy script";
@@ -192,12 +386,20 @@ public class Groovy extends AbstractGroovy {
                 installations2.add(install);
             }
             this.installations2 = installations2;
+            InstallationCache.clear();
             save();
         }
 
         @Override
         public boolean configure(StaplerRequest2 req, JSONObject json) throws hudson.model.Descriptor.FormException {
             allowMacro = json.getBoolean("allowMacro");
+            daemonMaxRuns = json.optInt("daemonMaxRuns", DEFAULT_DAEMON_MAX_RUNS);
+            daemonMaxHeap = json.optInt("daemonMaxHeap", DEFAULT_DAEMON_MAX_HEAP);
+            distributionCache = json.optBoolean("distributionCache");
+            maxConcurrentPushes = json.optInt("maxConcurrentPushes", DEFAULT_MAX_CONCURRENT_PUSHES);
+            prewarm = json.optBoolean("prewarm");
+            prewarmVersion = json.optBoolean("prewarmVersion");
+            prefetchedGrapes = Util.fixEmptyAndTrim(json.optString("prefetchedGrapes"));
             save();
             return true;
         }
@@ -233,19 +435,115 @@ public class Groovy extends AbstractGroovy {
     }
 
 
+    /**
+     * The environment to launch Groovy with.
+     * Must be called on the executor thread, as it looks up the current node.
+     * @param env as from {@link #buildEnvironment}
+     */
+    Map<String,String> buildLaunchEnvironment(AbstractBuild<?,?> build, BuildListener listener, EnvVars env) throws IOException, InterruptedException {
+        Map<String,String> envVars = new EnvVars(env);
+        hudson.plugins.groovy.GroovyInstallation installation = getGroovy();
+        if(installation != null) {
+            Node node = Computer.currentComputer().getNode();
+            if (node != null) {
+                installation = installation.forNode(node, listener);
+            }
+            envVars.put("GROOVY_HOME", installation.getHome());
+        }
+
+        for(Map.Entry<String,String> e : build.getBuildVariables().entrySet()){
+            envVars.put(e.getKey(),e.getValue());
+        }
+
+        String origJavaOpts = build.getBuildVariables().get("JAVA_OPTS");
+        StringBuilder javaOpts = new StringBuilder((origJavaOpts != null) ? origJavaOpts : "");
+        if (!getLaunchProfile().getJavaOpts().isEmpty())
+            javaOpts.append(' ').append(getLaunchProfile().getJavaOpts());
+        //Add javaOpts at the end
+        if(this.javaOpts != null) //backward compatibility
+            javaOpts.append(' ').append(this.javaOpts);
+        envVars.put("JAVA_OPTS", javaOpts.toString());
+
+        envVars.put("$PATH_SEPARATOR",":::"); //TODO why??
+        return envVars;
+    }
+
+    /**
+     * Makes the {@code @Grab} dependencies listed in the global configuration available on the current node, and points Grape at them through {@code JAVA_OPTS}.
+     * Must be called on the executor thread, as it looks up the current node.
+     */
+    private void prefetchGrapes(BuildListener listener, Map<String,String> envVars) throws IOException, InterruptedException {
+        List<String> coordinates = GrapeCache.allowed();
+        if (coordinates.isEmpty()) {
+            listener.getLogger().println("[GROOVY WARNING] No @Grab dependencies to prefetch are listed in the global configuration");
+            return;
+        }
+        Node node = Computer.currentComputer().getNode();
+        FilePath grapeRoot = node != null ? GrapeCache.get().prefetch(coordinates, node, listener) : null;
+        if (grapeRoot != null) {
+            envVars.put("JAVA_OPTS", "-Dgrape.root=" + grapeRoot.getRemote() + ' ' + envVars.get("JAVA_OPTS"));
+        }
+    }
+
+    /**
+     * Adds the options for the class data sharing archive of the installation, if it has one, to {@code JAVA_OPTS}.
+     * Must be called on the executor thread, as it looks up the current node.
+     * @return the archive, to {@link ClassDataSharing.Archive#commit} once the JVM has exited
+     */
+    private ClassDataSharing.Archive prepareClassDataSharing(BuildListener listener, Map<String,String> envVars) throws IOException, InterruptedException {
+        hudson.plugins.groovy.GroovyInstallation installation = getGroovy();
+        Node node = Computer.currentComputer().getNode();
+        String home = envVars.get("GROOVY_HOME");
+        FilePath root = node != null ? node.getRootPath() : null;
+        if (installation == null || !installation.isCds() || home == null || root == null) {
+            return null;
+        }
+        ClassDataSharing.Archive archive = ClassDataSharing.prepare(root, home, envVars);
+        if (archive == null) {
+            listener.getLogger().println("[GROOVY WARNING] Cannot use a class data sharing archive with this JDK, which must be Java 13 or newer; starting Groovy without it");
+            return null;
+        }
+        envVars.put("JAVA_OPTS", archive.getJavaOpts() + ' ' + envVars.get("JAVA_OPTS"));
+        return archive;
+    }
+
     protected hudson.plugins.groovy.GroovyInstallation getGroovy() {
         return DescriptorImpl.getGroovy(groovyName);
     }
 
     protected List<String> buildCommandLine(AbstractBuild<?,?> build, BuildListener listener, FilePath script, boolean isOnUnix) throws IOException, InterruptedException  {
-        ArrayList<String> list = new ArrayList<String>();
+        EnvVars env = buildEnvironment(build, listener);
+        return buildCommandLine(build, buildExecutable(listener, env, script.getChannel()), env, script, isOnUnix);
+    }
 
-        //prepare variable resolver - more efficient than calling env.expand(s)
-        EnvVars env = build.getEnvironment(listener);
-        env.overrideAll(build.getBuildVariables());
-        VariableResolver<String> vr = new VariableResolver.ByMap<String>(env);
+    /**
+     * Like {@link #buildCommandLine(AbstractBuild, BuildListener, FilePath, boolean)} with the environment and the executable already resolved.
+     * @param executable as from {@link #buildExecutable}
+     * @param env as from {@link #buildEnvironment}
+     */
+    List<String> buildCommandLine(AbstractBuild<?,?> build, String executable, EnvVars env, FilePath script, boolean isOnUnix) throws IOException {
+        List<String> list = buildGroovyCommand(executable, env, isOnUnix);
+        list.add(script.getRemote());
+        list.addAll(buildScriptParameters(build, scriptParameters, env));
+        return list;
+    }
 
+    /**
+     * Like {@link #buildCommandLine} but for a script read from standard input.
+     */
+    private List<String> buildStdinCommandLine(AbstractBuild<?,?> build, String executable, EnvVars env) throws IOException {
+        List<String> list = buildGroovyCommand(executable, env, true);
+        list.add("-e");
+        list.add(STDIN_BOOTSTRAP);
+        list.addAll(buildScriptParameters(build, scriptParameters, env));
+        return list;
+    }
 
+    /**
+     * The Groovy executable of the installation on the current node.
+     * Must be called on the executor thread, as it looks up the current node.
+     */
+    String buildExecutable(BuildListener listener, EnvVars env, VirtualChannel channel) throws IOException, InterruptedException  {
         String cmd = "groovy";//last hope in case of missing or not selected installation
 
         hudson.plugins.groovy.GroovyInstallation installation = getGroovy();
@@ -255,36 +553,35 @@ public class Groovy extends AbstractGroovy {
                 installation = installation.forNode(node, listener);
             }
             installation = installation.forEnvironment(env);
-            cmd = installation.getExecutable(script.getChannel());
+            cmd = installation.getExecutable(channel);
             //some misconfiguration, reverting back to default groovy cmd
             if(null == cmd){
                 cmd = "groovy";
                 listener.getLogger().println("[GROOVY WARNING] Groovy executable is NULL, please check your Groovy configuration, trying fallback 'groovy' instead.");
             }
         }
-        list.add(cmd);
+        return cmd;
+    }
+
+    /**
+     * The Groovy executable with its options, up to but excluding the script.
+     */
+    private List<String> buildGroovyCommand(String executable, EnvVars env, boolean isOnUnix) throws IOException {
+        ArrayList<String> list = new ArrayList<String>();
+
+        VariableResolver<String> vr = new VariableResolver.ByMap<String>(env);
+
+        list.add(executable);
 
         //Add class path
-        if(StringUtils.isNotBlank(classPath)) {
-            String pathSeparator = isOnUnix ? ":" : ";";
-            StringTokenizer tokens = new StringTokenizer(classPath);
+        String cp = buildClassPath(vr, isOnUnix);
+        if(cp != null) {
             list.add("-cp");
-            // class path has to be one item, otherwise spaces are add around class path separator and build will fail
-            StringBuilder sb = new StringBuilder();
-            sb.append(Util.replaceMacro(tokens.nextToken(),vr));
-            while(tokens.hasMoreTokens()) {
-                sb.append(pathSeparator);
-                sb.append(Util.replaceMacro(tokens.nextToken(),vr));
-            }
-            list.add(sb.toString());
+            list.add(cp);
         }
         
         //Add java properties
-        if(StringUtils.isNotBlank(properties)) {
-            for (Entry<Object, Object> entry : parseProperties(properties).entrySet()) {
-                list.add("-D" + entry.getKey() + "=" + entry.getValue());
-            }
-        }
+        addProperties(list);
 
         //Add groovy parameters
         if(StringUtils.isNotBlank(parameters)) {
@@ -293,42 +590,99 @@ public class Groovy extends AbstractGroovy {
                 list.add(Util.replaceMacro(arg, vr));
             }
         }
-        list.add(script.getRemote());
+        return list;
+    }
 
-        //Add script parameters
-        if(StringUtils.isNotBlank(scriptParameters)) {
-            String[] params = parseParams(scriptParameters);
-            ParametersAction parameters = build.getAction(ParametersAction.class);
-            for(String param : params) {
-            	//first replace parameter from parameterized build
-            	if (parameters != null) {
-                    param = parameters.substitute(build, param);
-                }
-            	//then replace evn vars
-            	param = Util.replaceMacro(param,vr);
-                list.add(param);
+    /**
+     * The class path as one item, otherwise spaces are add around class path separator and build will fail.
+     */
+    private String buildClassPath(VariableResolver<String> vr, boolean isOnUnix) {
+        if(StringUtils.isBlank(classPath)) {
+            return null;
+        }
+        String pathSeparator = isOnUnix ? ":" : ";";
+        StringTokenizer tokens = new StringTokenizer(classPath);
+        StringBuilder sb = new StringBuilder();
+        sb.append(Util.replaceMacro(tokens.nextToken(),vr));
+        while(tokens.hasMoreTokens()) {
+            sb.append(pathSeparator);
+            sb.append(Util.replaceMacro(tokens.nextToken(),vr));
+        }
+        return sb.toString();
+    }
+
+    private void addProperties(List<String> list) throws IOException {
+        if(StringUtils.isNotBlank(properties)) {
+            for (Entry<Object, Object> entry : parseProperties(properties).entrySet()) {
+                list.add("-D" + entry.getKey() + "=" + entry.getValue());
             }
         }
+    }
 
+    /**
+     * Like {@link #buildCommandLine} but running the classes of the script compiled by {@link PrecompiledScripts} with {@code java},
+     * whose options are taken from {@code JAVA_OPTS}.
+     * Must be called on the executor thread, as it looks up the current node.
+     * @return null if the script cannot be precompiled, and must be run from source
+     */
+    private List<String> buildPrecompiledCommandLine(AbstractBuild<?,?> build, BuildListener listener, EnvVars env, Launcher launcher, FilePath script, Map<String,String> envVars) throws IOException, InterruptedException {
+        String home = envVars.get("GROOVY_HOME");
+        Node node = Computer.currentComputer().getNode();
+        FilePath root = node != null ? node.getRootPath() : null;
+        if (home == null || root == null || StringUtils.isNotBlank(parameters)) {
+            listener.getLogger().println("[GROOVY WARNING] Precompiling needs a Groovy installation and no Groovy parameters, running the script from source instead");
+            return null;
+        }
+        boolean isOnUnix = launcher.isUnix();
+        String pathSeparator = isOnUnix ? ":" : ";";
+        String fileSeparator = isOnUnix ? "/" : "\\";
+        String cp = buildClassPath(new VariableResolver.ByMap<String>(env), isOnUnix);
+        String className = scriptSource instanceof StringScriptSource ? PrecompiledScripts.INLINE_CLASS : className(script.getBaseName());
+        String groovyc = home + fileSeparator + "bin" + fileSeparator + (isOnUnix ? "groovyc" : "groovyc.bat");
+        FilePath classes = PrecompiledScripts.get(root, script, className, cp, home, groovyc, launcher, envVars, listener);
+
+        List<String> list = new ArrayList<String>();
+        String javaHome = envVars.get("JAVA_HOME");
+        list.add(StringUtils.isNotBlank(javaHome) ? javaHome + fileSeparator + "bin" + fileSeparator + (isOnUnix ? "java" : "java.exe") : "java");
+        String javaOpts = envVars.get("JAVA_OPTS");
+        if(StringUtils.isNotBlank(javaOpts)) {
+            list.addAll(Arrays.asList(parseParams(javaOpts)));
+        }
+        list.add("-Dgroovy.home=" + home);
+        list.add("-cp");
+        list.add(classes.getRemote() + pathSeparator + home + fileSeparator + "lib" + fileSeparator + "*" + (cp != null ? pathSeparator + cp : ""));
+        addProperties(list);
+        list.add(className);
+        list.addAll(buildScriptParameters(build, scriptParameters, env));
         return list;
-
     }
 
     /**
-     * Parse parameters to be passed as arguments to the groovy binary
-     *
+     * The class groovyc would name after a script file, made a valid identifier.
      */
-    private String[] parseParams(String line) {
-        //JENKINS-24870 CommandLine.getExecutable tries to fix file separators, so if the first param contains slashes, it can cause problems
-        //Adding some placeholder instead of executable
-        // TODO perhaps QuotedStringTokenizer.tokenize suffices, so we can drop the commons-exec dep?
-        CommandLine cmdLine = CommandLine.parse("executable_placeholder " + line);
-        String[] parsedArgs = cmdLine.getArguments();
-        String[] args = new String[parsedArgs.length];
-        if(parsedArgs.length > 0) {
-            System.arraycopy(parsedArgs, 0, args, 0, parsedArgs.length);
+    static String className(String baseName) {
+        StringBuilder b = new StringBuilder();
+        for (char c : baseName.toCharArray()) {
+            b.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        if (b.length() == 0 || !Character.isJavaIdentifierStart(b.charAt(0))) {
+            b.insert(0, '_');
         }
-        return args;
+        return b.toString();
+    }
+
+    /**
+     * Where this builder is in the builders of the project, or -1 if it has none.
+     */
+    private int builderIndex(AbstractBuild<?,?> build) {
+        return build.getProject() instanceof Project<?,?> p ? p.getBuildersList().indexOf(this) : -1;
+    }
+
+    //prepare variable resolver - more efficient than calling env.expand(s)
+    static EnvVars buildEnvironment(AbstractBuild<?,?> build, BuildListener listener) throws IOException, InterruptedException {
+        EnvVars env = build.getEnvironment(listener);
+        env.overrideAll(build.getBuildVariables());
+        return env;
     }
 
     public ScriptSource getScriptSource() {
@@ -374,6 +728,69 @@ public class Groovy extends AbstractGroovy {
     	return classPath;
     }
 
+    public boolean isDaemon() {
+        return daemon;
+    }
+
+    @DataBoundSetter
+    public void setDaemon(boolean daemon) {
+        this.daemon = daemon;
+    }
+
+    public boolean isPrecompile() {
+        return precompile;
+    }
+
+    @DataBoundSetter
+    public void setPrecompile(boolean precompile) {
+        this.precompile = precompile;
+    }
+
+    public boolean isPrefetchGrapes() {
+        return prefetchGrapes;
+    }
+
+    @DataBoundSetter
+    public void setPrefetchGrapes(boolean prefetchGrapes) {
+        this.prefetchGrapes = prefetchGrapes;
+    }
+
+    public boolean isSkipUnchanged() {
+        return skipUnchanged;
+    }
+
+    @DataBoundSetter
+    public void setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    public String getInputs() {
+        return inputs;
+    }
+
+    @DataBoundSetter
+    public void setInputs(String inputs) {
+        this.inputs = Util.fixEmpty(inputs);
+    }
+
+    public String getOutputs() {
+        return outputs;
+    }
+
+    @DataBoundSetter
+    public void setOutputs(String outputs) {
+        this.outputs = Util.fixEmpty(outputs);
+    }
+
+    public LaunchProfile getLaunchProfile() {
+        return launchProfile != null ? launchProfile : LaunchProfile.DEFAULT;
+    }
+
+    @DataBoundSetter
+    public void setLaunchProfile(LaunchProfile launchProfile) {
+        this.launchProfile = launchProfile == LaunchProfile.DEFAULT ? null : launchProfile;
+    }
+
     //---- Backward compatibility -------- //
 
     public enum BuilderType { COMMAND,FILE }
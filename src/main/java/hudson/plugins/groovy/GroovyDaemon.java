@@ -0,0 +1,458 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.PeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import hudson.slaves.WorkspaceList;
+import hudson.util.LogTaskListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Pool of long-lived Groovy JVMs which {@link Groovy} can send scripts to, rather than forking a new JVM for every build step.
+ * <p>Workers run {@code DaemonWorker.groovy} and are pooled per computer, workspace, Groovy command line and the variables they are started with,
+ * so a worker only ever runs scripts which would otherwise have been launched with exactly the same JVM.
+ * Each script is compiled in a fresh class loader. Workers are replaced after a configurable number of runs,
+ * once their heap usage crosses a configurable threshold, or when a script calls {@link System#exit}.
+ * <p>Since a JVM cannot change its own environment, and workers outlive the build which started them,
+ * workers only get the variables of {@link #WORKER_ENVIRONMENT} from the build;
+ * the full environment of each build is sent along with its script, and bound to {@code env}.
+ * <p>Workers serving {@link GroovyEvalStep} are pooled apart, per node, Groovy command line and variables of {@link #WORKER_ENVIRONMENT} set in the build,
+ * whatever its workspace, and run in a directory under the agent root;
+ * they keep compiled expressions across requests, and send back the value of each expression in serialized form.
+ */
+@Restricted(NoExternalUse.class)
+public final class GroovyDaemon {
+
+    private static final Logger LOGGER = Logger.getLogger(GroovyDaemon.class.getName());
+
+    /** Written by a worker once it is ready, so that anything the launcher script printed before can be skipped. */
+    static final int MAGIC = 0x47524F4F;
+    /** Frame length announcing that the worker accepted a request. */
+    static final int ACK = -2;
+    /** Frame length announcing that the worker finished a request. */
+    static final int DONE = -1;
+
+    static final int REQUEST_RUN = 1;
+    static final int REQUEST_EVAL = 2;
+
+    /** Where workers serving {@link GroovyEvalStep} run, under the agent root. */
+    static final String EVAL_DIRECTORY = "caches/groovy-eval";
+
+    /** The only build variables workers are started with. */
+    private static final List<String> WORKER_ENVIRONMENT = List.of("PATH", "JAVA_HOME", "GROOVY_HOME", "JAVA_OPTS");
+
+    /** How long an idle worker is kept around. */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "tunable from the script console")
+    public static /* not final */ long IDLE_TIMEOUT = SystemProperties.getLong(GroovyDaemon.class.getName() + ".idleTimeout", TimeUnit.MINUTES.toMillis(10));
+
+    /** Maximum number of idle workers kept per pool key. */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "tunable from the script console")
+    public static /* not final */ int MAX_IDLE = SystemProperties.getInteger(GroovyDaemon.class.getName() + ".maxIdle", 2);
+
+    private static final Map<String, Deque<Worker>> IDLE = new HashMap<>();
+
+    /**
+     * Runs a script in a pooled worker, starting one if necessary.
+     * @param groovyCommand the Groovy executable and its options, as in {@link Groovy#buildCommandLine} up to the script
+     * @param env the environment of the build, bound to {@code env} in the script; a new worker only gets {@link #WORKER_ENVIRONMENT} from it
+     * @return the exit code of the script
+     */
+    static int run(Launcher launcher, TaskListener listener, FilePath ws, Map<String, String> env,
+                   List<String> groovyCommand, FilePath script, List<String> scriptParameters,
+                   int maxRuns, int maxHeap) throws IOException, InterruptedException {
+        Computer computer = Computer.currentComputer();
+        Map<String, String> workerEnv = workerEnvironment(env);
+        String key = (computer != null ? computer.getName() : "") + '\n' + ws.getRemote() + '\n' + groovyCommand + '\n' + workerEnv;
+        return use(key, launcher, listener, WorkspaceList.tempDir(ws).child("groovy-daemon"), ws, workerEnv, groovyCommand,
+                w -> w.run(script.getRemote(), scriptParameters, env, listener.getLogger()), maxRuns, maxHeap);
+    }
+
+    /**
+     * Evaluates an expression in a pooled worker, starting one if necessary.
+     * Workers are shared by all jobs using the node, so they only get the variables of {@link #WORKER_ENVIRONMENT} from {@code env},
+     * leaving out anything specific to a build, such as credentials bound to variables.
+     * @param node the node to run on, as steps do not run on an executor thread
+     * @param root the root directory of the node
+     * @param input the serialized form of the value of {@code input}
+     * @return the exit code of the expression, and if it succeeded, the serialized form of its value
+     */
+    static Worker.Evaluation eval(Launcher launcher, TaskListener listener, Node node, FilePath root, Map<String, String> env,
+                                  List<String> groovyCommand, String expression, byte[] input,
+                                  int maxRuns, int maxHeap) throws IOException, InterruptedException {
+        Map<String, String> workerEnv = workerEnvironment(env);
+        String key = node.getNodeName() + "\neval\n" + groovyCommand + '\n' + workerEnv;
+        FilePath dir = root.child(EVAL_DIRECTORY);
+        return use(key, launcher, listener, dir, dir, workerEnv, groovyCommand,
+                w -> w.eval(expression, input, listener.getLogger()), maxRuns, maxHeap);
+    }
+
+    /**
+     * The variables of {@link #WORKER_ENVIRONMENT} set in the environment of a build, sorted so they can be part of a pool key.
+     */
+    private static Map<String, String> workerEnvironment(Map<String, String> env) {
+        Map<String, String> workerEnv = new TreeMap<>();
+        for (String name : WORKER_ENVIRONMENT) {
+            String value = env.get(name);
+            if (value != null) {
+                workerEnv.put(name, value);
+            }
+        }
+        return workerEnv;
+    }
+
+    private interface Request<T> {
+        T send(Worker worker) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Sends a request to an idle worker, or to a new one if there is none or it turns out to have died meanwhile.
+     * @param dir where to put the worker script
+     * @param pwd the working directory of a new worker
+     */
+    private static <T> T use(String key, Launcher launcher, TaskListener listener, FilePath dir, FilePath pwd, Map<String, String> env,
+                             List<String> groovyCommand, Request<T> request, int maxRuns, int maxHeap) throws IOException, InterruptedException {
+        Worker worker = acquire(key);
+        if (worker != null) {
+            try {
+                return finish(worker, request.send(worker), maxRuns, maxHeap);
+            } catch (Worker.DeadException x) {
+                LOGGER.log(Level.FINE, "idle Groovy daemon died, starting another", x);
+            }
+        }
+        worker = Worker.start(key, launcher, listener, dir, pwd, env, groovyCommand);
+        try {
+            return finish(worker, request.send(worker), maxRuns, maxHeap);
+        } catch (Worker.DeadException x) {
+            throw new IOException("Groovy daemon failed to start", x);
+        }
+    }
+
+    private static <T> T finish(Worker worker, T result, int maxRuns, int maxHeap) {
+        if (worker.exited || worker.runs >= maxRuns || worker.heapPercent >= maxHeap) {
+            worker.stop();
+        } else {
+            release(worker);
+        }
+        return result;
+    }
+
+    private static @CheckForNull Worker acquire(String key) {
+        synchronized (IDLE) {
+            Deque<Worker> workers = IDLE.get(key);
+            Worker worker = workers != null ? workers.pollLast() : null;
+            if (workers != null && workers.isEmpty()) {
+                IDLE.remove(key);
+            }
+            return worker;
+        }
+    }
+
+    private static void release(Worker worker) {
+        Worker surplus = null;
+        synchronized (IDLE) {
+            Deque<Worker> workers = IDLE.computeIfAbsent(worker.key, k -> new ArrayDeque<>());
+            worker.idleSince = System.currentTimeMillis();
+            workers.addLast(worker);
+            if (workers.size() > MAX_IDLE) {
+                surplus = workers.pollFirst();
+            }
+        }
+        if (surplus != null) {
+            surplus.stop();
+        }
+    }
+
+    /**
+     * Stops idle workers matching a condition.
+     */
+    private static void stopIdle(Predicate<Worker> condition) {
+        List<Worker> stopped = new ArrayList<>();
+        synchronized (IDLE) {
+            for (Iterator<Deque<Worker>> it = IDLE.values().iterator(); it.hasNext();) {
+                Deque<Worker> workers = it.next();
+                workers.removeIf(w -> {
+                    if (condition.test(w)) {
+                        stopped.add(w);
+                        return true;
+                    }
+                    return false;
+                });
+                if (workers.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+        for (Worker w : stopped) {
+            w.stop();
+        }
+    }
+
+    static final class Worker {
+
+        /** Thrown when the worker died before accepting a request. */
+        static final class DeadException extends IOException {
+            DeadException(Throwable cause) {
+                super(cause);
+            }
+        }
+
+        final String key;
+        private final Proc proc;
+        private final DataOutputStream requests;
+        private final DataInputStream responses;
+        int runs;
+        int heapPercent;
+        /** Set when the worker JVM is gone, typically after {@link System#exit}. */
+        boolean exited;
+        long idleSince;
+
+        private Worker(String key, Proc proc) {
+            this.key = key;
+            this.proc = proc;
+            this.requests = new DataOutputStream(new BufferedOutputStream(proc.getStdin()));
+            this.responses = new DataInputStream(new BufferedInputStream(proc.getStdout()));
+        }
+
+        static Worker start(String key, Launcher launcher, TaskListener listener, FilePath dir, FilePath pwd, Map<String, String> env, List<String> groovyCommand) throws IOException, InterruptedException {
+            FilePath workerScript = dir.child("DaemonWorker.groovy");
+            workerScript.copyFrom(GroovyDaemon.class.getResource("DaemonWorker.groovy"));
+            List<String> cmd = new ArrayList<>(groovyCommand);
+            cmd.add(workerScript.getRemote());
+            Map<String, String> workerEnv = new HashMap<>(env);
+            // outlive the build which happened to start it
+            workerEnv.put("BUILD_ID", "dontKillMe");
+            workerEnv.put("JENKINS_NODE_COOKIE", "dontKillMe");
+            listener.getLogger().println("Starting Groovy daemon");
+            Proc proc = launcher.launch().cmds(cmd).envs(workerEnv).pwd(pwd)
+                    .readStdout().writeStdin()
+                    .stderr(new LogTaskListener(LOGGER, Level.FINE).getLogger())
+                    .start();
+            Worker worker = new Worker(key, proc);
+            try {
+                worker.awaitReady();
+            } catch (IOException x) {
+                worker.stop();
+                throw x;
+            }
+            return worker;
+        }
+
+        private void awaitReady() throws IOException {
+            int window = 0;
+            int read = 0;
+            while (read < 4 || window != MAGIC) {
+                int b = responses.read();
+                if (b == -1) {
+                    throw new EOFException("Groovy daemon exited before becoming ready");
+                }
+                window = (window << 8) | b;
+                read++;
+            }
+        }
+
+        /**
+         * The outcome of {@link #eval}.
+         */
+        static final class Evaluation {
+
+            final int code;
+            /** The serialized value, if the expression succeeded. */
+            final @CheckForNull byte[] value;
+
+            Evaluation(int code, @CheckForNull byte[] value) {
+                this.code = code;
+                this.value = value;
+            }
+
+        }
+
+        /** Set by {@link #copyOutput} from the response to {@link #REQUEST_EVAL}. */
+        private byte[] value;
+
+        /**
+         * Sends a script, along with the environment of the build, to the worker and copies its output until it is done.
+         */
+        int run(String script, List<String> args, Map<String, String> env, OutputStream out) throws IOException, InterruptedException {
+            return exchange(() -> {
+                requests.writeInt(REQUEST_RUN);
+                writeString(script);
+                requests.writeInt(args.size());
+                for (String arg : args) {
+                    writeString(arg);
+                }
+                requests.writeInt(env.size());
+                for (Map.Entry<String, String> e : env.entrySet()) {
+                    writeString(e.getKey());
+                    writeString(e.getValue());
+                }
+                requests.flush();
+                return copyOutput(out, false);
+            });
+        }
+
+        /**
+         * Sends an expression to the worker, copies its output until it is done, and collects its value.
+         */
+        Evaluation eval(String expression, byte[] input, OutputStream out) throws IOException, InterruptedException {
+            return exchange(() -> {
+                requests.writeInt(REQUEST_EVAL);
+                writeString(expression);
+                requests.writeInt(input.length);
+                requests.write(input);
+                requests.flush();
+                value = null;
+                int code = copyOutput(out, true);
+                return new Evaluation(code, code == 0 ? value : null);
+            });
+        }
+
+        /**
+         * The reading happens on another thread so that aborting the build can stop the worker even while blocked on local process output.
+         */
+        private <T> T exchange(Callable<T> request) throws IOException, InterruptedException {
+            Future<T> result = Computer.threadPoolForRemoting.submit(request);
+            try {
+                return result.get();
+            } catch (InterruptedException x) {
+                stop();
+                throw x;
+            } catch (ExecutionException x) {
+                Throwable cause = x.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+
+        private int copyOutput(OutputStream out, boolean eval) throws IOException, InterruptedException {
+            boolean accepted = false;
+            byte[] buf = new byte[8192];
+            try {
+                while (true) {
+                    int len = responses.readInt();
+                    if (len == ACK) {
+                        accepted = true;
+                    } else if (len == DONE) {
+                        int code = responses.readInt();
+                        heapPercent = responses.readInt();
+                        if (eval) {
+                            int length = responses.readInt();
+                            if (length >= 0) {
+                                value = new byte[length];
+                                responses.readFully(value);
+                            }
+                        }
+                        runs++;
+                        out.flush();
+                        return code;
+                    } else {
+                        while (len > 0) {
+                            int chunk = responses.read(buf, 0, Math.min(len, buf.length));
+                            if (chunk == -1) {
+                                throw new EOFException();
+                            }
+                            out.write(buf, 0, chunk);
+                            len -= chunk;
+                        }
+                    }
+                }
+            } catch (IOException x) {
+                if (!accepted) {
+                    stop();
+                    throw new DeadException(x);
+                }
+                // the script terminated the worker JVM, e.g. by System.exit
+                exited = true;
+                out.flush();
+                return proc.join();
+            }
+        }
+
+        private void writeString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            requests.writeInt(bytes.length);
+            requests.write(bytes);
+        }
+
+        void stop() {
+            exited = true;
+            try {
+                requests.close(); // the worker exits once its stdin is closed
+            } catch (IOException x) {
+                LOGGER.log(Level.FINE, null, x);
+            }
+            try {
+                proc.kill();
+            } catch (IOException | InterruptedException x) {
+                LOGGER.log(Level.FINE, null, x);
+            }
+        }
+
+    }
+
+    @Extension
+    public static final class IdleReaper extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        protected void doRun() {
+            long cutoff = System.currentTimeMillis() - IDLE_TIMEOUT;
+            stopIdle(w -> w.idleSince < cutoff);
+        }
+
+    }
+
+    @Extension
+    public static final class OfflineListener extends ComputerListener {
+
+        @Override
+        public void onOffline(@NonNull Computer c, @CheckForNull OfflineCause cause) {
+            String prefix = c.getName() + '\n';
+            stopIdle(w -> w.key.startsWith(prefix));
+        }
+
+    }
+
+    private GroovyDaemon() {}
+
+}
@@ -0,0 +1,185 @@
+package hudson.plugins.groovy;
+
+import com.google.common.collect.ImmutableSet;
+import groovy.lang.GroovyObject;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.Node;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.ClassFilter;
+import hudson.remoting.ObjectInputStreamEx;
+import hudson.util.ListBoxModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Evaluates a Groovy expression on the current node and returns its value,
+ * without the shell step and the file round trip of {@link WithGroovyStep}.
+ * <p>Expressions run in a worker JVM of {@link GroovyDaemon} kept per node and Groovy installation, so only the first call pays for starting it.
+ * Values passed in and out must be serializable, as for {@link WithGroovyStep#getInput}.
+ */
+public class GroovyEvalStep extends Step {
+
+    private final String script;
+    private String tool;
+    private String jdk;
+    private Object input;
+
+    @DataBoundConstructor
+    public GroovyEvalStep(String script) {
+        this.script = script;
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public String getTool() {
+        return tool;
+    }
+
+    @DataBoundSetter
+    public void setTool(String tool) {
+        this.tool = Util.fixEmpty(tool);
+    }
+
+    public String getJdk() {
+        return jdk;
+    }
+
+    @DataBoundSetter
+    public void setJdk(String jdk) {
+        this.jdk = Util.fixEmpty(jdk);
+    }
+
+    public Object getInput() {
+        return input;
+    }
+
+    @DataBoundSetter
+    public void setInput(Object input) {
+        this.input = input;
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        return new Execution(context, this);
+    }
+
+    private static class Execution extends SynchronousNonBlockingStepExecution<Object> {
+
+        private static final long serialVersionUID = 1;
+
+        private final transient GroovyEvalStep step;
+
+        Execution(StepContext context, GroovyEvalStep step) {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        protected Object run() throws Exception {
+            PhaseTimer timer = new PhaseTimer("groovyEval");
+            timer.context(getContext().get(Run.class));
+            timer.script(step.script);
+            timer.start("installation");
+            Node node = getContext().get(Node.class);
+            EnvVars contextEnv = getContext().get(EnvVars.class);
+            TaskListener listener = getContext().get(TaskListener.class);
+            FilePath root = node.getRootPath();
+            if (root == null) {
+                throw new AbortException(node.getDisplayName() + " is offline");
+            }
+            EnvVars env = new EnvVars(contextEnv);
+            String java = "java";
+            if (step.jdk != null) {
+                String home = WithGroovyStep.jdk(step.jdk, node, contextEnv, listener).getHome();
+                env.override("PATH+JDK", root.child(home).child("bin").getRemote());
+                java = root.child(home).child("bin/java").getRemote();
+            }
+            List<String> cmd = new ArrayList<>();
+            if (step.tool != null) {
+                GroovyInstallation installation = WithGroovyStep.installation(step.tool, node, contextEnv, listener);
+                String exe = installation.getExecutable(root.getChannel());
+                if (exe == null) {
+                    throw new AbortException("Cannot find the Groovy executable in " + installation.getHome());
+                }
+                cmd.add(exe);
+                env.put("GROOVY_HOME", root.child(installation.getHome()).getRemote());
+            } else {
+                cmd.addAll(Arrays.asList(java, "-cp", WithGroovyStep.Execution.FindGroovyAllJAR.runIn(root.getChannel(), listener), "groovy.ui.GroovyMain"));
+            }
+            timer.start("input");
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(buf)) {
+                oos.writeObject(step.input);
+            }
+            timer.payload(buf.size());
+            try {
+                timer.start("execution");
+                Groovy.DescriptorImpl config = Jenkins.get().getDescriptorByType(Groovy.DescriptorImpl.class);
+                GroovyDaemon.Worker.Evaluation evaluation = GroovyDaemon.eval(getContext().get(Launcher.class), listener, node, root, env, cmd,
+                        step.script, buf.toByteArray(), config.getDaemonMaxRuns(), config.getDaemonMaxHeap());
+                if (evaluation.code != 0 || evaluation.value == null) {
+                    throw new AbortException("groovyEval failed with exit code " + evaluation.code);
+                }
+                timer.payload(evaluation.value.length);
+                timer.start("output");
+                try (ObjectInputStream ois = new ObjectInputStreamEx(new ByteArrayInputStream(evaluation.value), GroovyObject.class.getClassLoader(), ClassFilter.DEFAULT)) {
+                    return ois.readObject();
+                }
+            } finally {
+                timer.record(getContext().get(Run.class), listener);
+            }
+        }
+
+    }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public String getFunctionName() {
+            return "groovyEval";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Evaluate Groovy expression on the current node";
+        }
+
+        @Override
+        public Set<Class<?>> getRequiredContext() {
+            return ImmutableSet.of(Node.class, Launcher.class, EnvVars.class, TaskListener.class);
+        }
+
+        public ListBoxModel doFillToolItems() {
+            return Jenkins.get().getDescriptorByType(WithGroovyStep.DescriptorImpl.class).doFillToolItems();
+        }
+
+        public ListBoxModel doFillJdkItems() {
+            return Jenkins.get().getDescriptorByType(WithGroovyStep.DescriptorImpl.class).doFillJdkItems();
+        }
+
+    }
+
+}
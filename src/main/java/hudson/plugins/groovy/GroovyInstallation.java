@@ -24,6 +24,7 @@ import jenkins.security.MasterToSlaveCallable;
 import org.jenkinsci.Symbol;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 public class GroovyInstallation extends ToolInstallation implements EnvironmentSpecific<GroovyInstallation>, NodeSpecific<GroovyInstallation> {
 
@@ -32,13 +33,31 @@ public class GroovyInstallation extends ToolInstallation implements EnvironmentS
     	super(name,home,properties);
     }
 
+    private boolean cds;
+
+    /** The {@link InstallationCache} entry this was resolved from by {@link #forNode}, if any, to drop should the executable disappear. */
+    private transient String cacheKey;
+
+    /**
+     * Whether forked Groovy JVMs use a class data sharing archive, created on each agent by the first launch, see {@link ClassDataSharing}.
+     */
+    public boolean isCds() {
+        return cds;
+    }
+
+    @DataBoundSetter
+    public void setCds(boolean cds) {
+        this.cds = cds;
+    }
+
     /**
      * Gets the executable path of this groovy installation on the given target system.
+     * The result is remembered for a while, see {@link InstallationCache}.
      */
     public @CheckForNull String getExecutable(VirtualChannel channel) throws IOException, InterruptedException {
-        return channel.call(new GetExecutable(getHome()));
+        return InstallationCache.getExecutable(getHome(), cacheKey, channel);
     }
-    private static class GetExecutable extends MasterToSlaveCallable<String, IOException> {
+    static class GetExecutable extends MasterToSlaveCallable<String, IOException> {
         private final String home;
         GetExecutable(String home) {
             this.home = home;
@@ -66,11 +85,22 @@ public class GroovyInstallation extends ToolInstallation implements EnvironmentS
 
 
     public GroovyInstallation forEnvironment(EnvVars environment) {
-        return new GroovyInstallation(getName(), environment.expand(getHome()), getProperties().toList());
+        GroovyInstallation installation = new GroovyInstallation(getName(), environment.expand(getHome()), getProperties().toList());
+        installation.cds = cds;
+        installation.cacheKey = cacheKey;
+        return installation;
     }
 
     public GroovyInstallation forNode(Node node, TaskListener log) throws IOException, InterruptedException {
-        return new GroovyInstallation(getName(), translateFor(node, log), getProperties().toList());
+        String home = InstallationCache.getHome(this, node);
+        if (home == null) {
+            home = translateFor(node, log);
+            InstallationCache.putHome(this, node, home);
+        }
+        GroovyInstallation installation = new GroovyInstallation(getName(), home, getProperties().toList());
+        installation.cds = cds;
+        installation.cacheKey = InstallationCache.key(this, node);
+        return installation;
     }
 
     @Symbol("groovy")
@@ -1,8 +1,14 @@
 package hudson.plugins.groovy;
 
 import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Node;
+import hudson.model.TaskListener;
 import hudson.tools.DownloadFromUrlInstaller;
 import hudson.tools.ToolInstallation;
+import java.io.File;
+import java.io.IOException;
+import jenkins.model.Jenkins;
 
 import org.kohsuke.stapler.DataBoundConstructor;
 
@@ -12,6 +18,41 @@ public class GroovyInstaller extends DownloadFromUrlInstaller {
         super(id);                                                                                                                             
     }                                                                                                                                          
                                                                                                                                                
+    /**
+     * Installs from the controller's {@link DistributionCache} when that is enabled, and as usual otherwise.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public FilePath performInstallation(ToolInstallation tool, Node node, TaskListener log) throws IOException, InterruptedException {
+        Groovy.DescriptorImpl config = Jenkins.get().getDescriptorByType(Groovy.DescriptorImpl.class);
+        if (config == null || !config.isDistributionCache()) {
+            return super.performInstallation(tool, node, log);
+        }
+        FilePath expected = preferredLocation(tool, node);
+        Installable inst = getInstallable();
+        if (inst == null) {
+            log.getLogger().println("Invalid tool ID " + id);
+            return expected;
+        }
+        if (inst instanceof NodeSpecific) {
+            inst = ((NodeSpecific<Installable>) inst).forNode(node, log);
+        }
+        if (isUpToDate(expected, inst)) {
+            return expected;
+        }
+        File zip = DistributionCache.get().fetch(inst, log);
+        log.getLogger().println("Unpacking " + inst.url + " from the controller cache to " + expected + " on " + node.getDisplayName());
+        DistributionCache.get().push(zip, expected, log, config.getMaxConcurrentPushes());
+        FilePath base = findPullUpDirectory(expected);
+        if (base != null && !base.equals(expected)) {
+            base.moveAllChildrenTo(expected);
+        }
+        // leave a record for the next up-to-date check
+        expected.child(".installedFrom").write(inst.url, "UTF-8");
+        expected.act(new DistributionCache.ChmodBin());
+        return expected;
+    }
+
     @Extension                                                                                                                                 
     public static final class DescriptorImpl extends DownloadFromUrlInstaller.DescriptorImpl<GroovyInstaller> {                                
         public String getDisplayName() {                                                                                                       
@@ -0,0 +1,94 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Action;
+import hudson.model.Run;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Per-phase timings of the Groovy steps run by a build, shown in its summary.
+ */
+@Restricted(NoExternalUse.class)
+public final class GroovyTimings implements Action {
+
+    /** Beyond this many steps per build, timings only go to {@link PhaseStatistics}. */
+    static final int MAX_STEPS = 100;
+
+    private final List<Step> steps = new ArrayList<>();
+
+    static @NonNull GroovyTimings forRun(@NonNull Run<?, ?> run) {
+        synchronized (GroovyTimings.class) {
+            GroovyTimings timings = run.getAction(GroovyTimings.class);
+            if (timings == null) {
+                timings = new GroovyTimings();
+                run.addAction(timings);
+            }
+            return timings;
+        }
+    }
+
+    synchronized void add(@NonNull PhaseTimer timer) {
+        if (steps.size() >= MAX_STEPS) {
+            return;
+        }
+        steps.add(new Step(timer.getStep(), new LinkedHashMap<>(timer.getPhases())));
+    }
+
+    public synchronized List<Step> getSteps() {
+        return new ArrayList<>(steps);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Groovy timings";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    public static final class Step {
+
+        private final String name;
+        /** Nanoseconds by phase. */
+        private final LinkedHashMap<String, Long> phases;
+
+        Step(String name, LinkedHashMap<String, Long> phases) {
+            this.name = name;
+            this.phases = phases;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Milliseconds by phase. */
+        public Map<String, Long> getPhases() {
+            Map<String, Long> millis = new LinkedHashMap<>();
+            phases.forEach((phase, nanos) -> millis.put(phase, TimeUnit.NANOSECONDS.toMillis(nanos)));
+            return millis;
+        }
+
+        public long getTotal() {
+            long total = 0;
+            for (long nanos : phases.values()) {
+                total += nanos;
+            }
+            return TimeUnit.NANOSECONDS.toMillis(total);
+        }
+
+    }
+
+}
@@ -49,6 +49,12 @@ public class GroovyTokenMacro extends DataBoundTokenMacro {
 	@Parameter
 	public String script;
 
+	/**
+	 * Whether to reuse the result of an identical expansion earlier in the same build.
+	 */
+	@Parameter
+	public boolean memoize;
+
 	@Override
 	public boolean acceptsMacroName(String macroName) {
 		return macroName.equals("GROOVY");
@@ -65,15 +71,32 @@ public class GroovyTokenMacro extends DataBoundTokenMacro {
 	    Groovy.DescriptorImpl decs = (Groovy.DescriptorImpl) jenkins.getDescriptorOrDie(Groovy.class);
 
 		if (decs.getAllowMacro()) {
+			PhaseTimer timer = new PhaseTimer("GROOVY macro");
+			timer.context(context);
+			timer.script(script);
+			if (memoize) {
+				timer.start("memo");
+				String memo = TokenMacroMemo.get(context, script);
+				if (memo != null) {
+					timer.record(context, null);
+					return memo;
+				}
+			}
 			SystemGroovy systemGroovy;
 			try {
 				systemGroovy = new SystemGroovy(new StringSystemScriptSource(new SecureGroovyScript(script, true, null)));
 			} catch (Descriptor.FormException e) {
 				throw new RuntimeException(e);
 			}
-			Object output = systemGroovy.run(context, (BuildListener) listener, null);
+			// compiled once and then reused across builds via CompiledScriptCache
+			Object output = systemGroovy.run(context, (BuildListener) listener, null, timer);
 			
-			return output != null ? output.toString() : "";
+			String result = output != null ? output.toString() : "";
+			timer.record(context, null);
+			if (memoize) {
+				TokenMacroMemo.put(context, script, result);
+			}
+			return result;
 		} else {
 			return script;
 		}
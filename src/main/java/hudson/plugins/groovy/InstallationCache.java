@@ -0,0 +1,129 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Remembers where {@link GroovyInstallation}s live on each node, so that builds need not repeat
+ * {@link GroovyInstallation#forNode} (tool location lookup and installers) and {@link GroovyInstallation#getExecutable} (a remote call) every time.
+ * <p>Entries are dropped when the installations are reconfigured, when nodes are reconfigured, and when an agent connects or disconnects.
+ * Executables are additionally rechecked on the agent at most every {@link #VALIDATION_INTERVAL} milliseconds;
+ * should the executable have disappeared, the node is resolved again by the next build.
+ */
+@Restricted(NoExternalUse.class)
+public final class InstallationCache {
+
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "tunable from the script console")
+    public static /* not final */ long VALIDATION_INTERVAL = SystemProperties.getLong(InstallationCache.class.getName() + ".validationInterval", TimeUnit.MINUTES.toMillis(5));
+
+    /** From node name, installation name and configured home to the home on that node. */
+    private static final Map<String, String> HOMES = new ConcurrentHashMap<>();
+
+    /** From agent channel (so reconnecting invalidates it) and home to the executable. */
+    private static final Map<VirtualChannel, Map<String, Executable>> EXECUTABLES = new WeakHashMap<>();
+
+    private static final class Executable {
+        final String path;
+        final long checked;
+        Executable(String path, long checked) {
+            this.path = path;
+            this.checked = checked;
+        }
+    }
+
+    static String key(GroovyInstallation installation, Node node) {
+        return node.getNodeName() + '\n' + installation.getName() + '\n' + installation.getHome();
+    }
+
+    static @CheckForNull String getHome(GroovyInstallation installation, Node node) {
+        return HOMES.get(key(installation, node));
+    }
+
+    static void putHome(GroovyInstallation installation, Node node, @CheckForNull String home) {
+        if (home != null) {
+            HOMES.put(key(installation, node), home);
+        }
+    }
+
+    /**
+     * @param key the entry of {@link #getHome} the home was resolved from, if any
+     */
+    static @CheckForNull String getExecutable(String home, @CheckForNull String key, VirtualChannel channel) throws IOException, InterruptedException {
+        Executable cached;
+        synchronized (EXECUTABLES) {
+            Map<String, Executable> executables = EXECUTABLES.get(channel);
+            cached = executables != null ? executables.get(home) : null;
+        }
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.checked < VALIDATION_INTERVAL) {
+            return cached.path;
+        }
+        String path = channel.call(new GroovyInstallation.GetExecutable(home));
+        if (cached != null && !Objects.equals(path, cached.path) && key != null) {
+            // deleted or replaced behind our back, so let installers run again
+            HOMES.remove(key);
+        }
+        synchronized (EXECUTABLES) {
+            Map<String, Executable> executables = EXECUTABLES.computeIfAbsent(channel, c -> new HashMap<>());
+            if (path != null) {
+                executables.put(home, new Executable(path, now));
+            } else {
+                executables.remove(home);
+            }
+        }
+        return path;
+    }
+
+    static void invalidate(String nodeName) {
+        String prefix = nodeName + '\n';
+        HOMES.keySet().removeIf(k -> k.startsWith(prefix));
+    }
+
+    static void clear() {
+        HOMES.clear();
+        synchronized (EXECUTABLES) {
+            EXECUTABLES.clear();
+        }
+    }
+
+    @Extension
+    public static final class Invalidator extends ComputerListener {
+
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            invalidate(c.getName());
+        }
+
+        @Override
+        public void onOffline(@NonNull Computer c, @CheckForNull OfflineCause cause) {
+            invalidate(c.getName());
+        }
+
+        @Override
+        public void onConfigurationChange() {
+            clear();
+        }
+
+    }
+
+    private InstallationCache() {}
+
+}
@@ -0,0 +1,269 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Functions;
+import hudson.model.Action;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.model.TransientComputerActionFactory;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.SlaveComputer;
+import hudson.tools.InstallSourceProperty;
+import hudson.tools.ToolInstaller;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.StaplerProxy;
+
+/**
+ * Installs and resolves the Groovy installations applicable to an agent as soon as it connects,
+ * when enabled with {@link Groovy.DescriptorImpl#isPrewarm}, so the first build on a fresh agent finds them in {@link InstallationCache}.
+ * <p>Runs in the background, logging to the agent log; the outcome for each installation is shown on the agent page.
+ * Installations with installers are only considered on agents some installer applies to, i.e. whose labels match;
+ * installations without installers are always checked.
+ */
+@Restricted(NoExternalUse.class)
+public final class InstallationPrewarm {
+
+    private static final Logger LOGGER = Logger.getLogger(InstallationPrewarm.class.getName());
+
+    /** By node name, then installation name. */
+    private static final Map<String, Map<String, Status>> STATUSES = new ConcurrentHashMap<>();
+
+    private InstallationPrewarm() {}
+
+    /**
+     * What happened to one installation on one node.
+     */
+    public static final class Status {
+
+        private final String installation;
+        private volatile String state = "pending";
+        private volatile String home;
+        private volatile String executable;
+        private volatile String version;
+        private volatile String error;
+        private volatile long millis;
+
+        Status(String installation) {
+            this.installation = installation;
+        }
+
+        public String getInstallation() {
+            return installation;
+        }
+
+        /** {@code pending}, {@code ready} or {@code failed}. */
+        public String getState() {
+            return state;
+        }
+
+        public @CheckForNull String getHome() {
+            return home;
+        }
+
+        public @CheckForNull String getExecutable() {
+            return executable;
+        }
+
+        public @CheckForNull String getVersion() {
+            return version;
+        }
+
+        public @CheckForNull String getError() {
+            return error;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+    }
+
+    static @NonNull List<Status> getStatuses(@NonNull String nodeName) {
+        Map<String, Status> statuses = STATUSES.get(nodeName);
+        return statuses != null ? new ArrayList<>(statuses.values()) : Collections.emptyList();
+    }
+
+    static boolean applies(@NonNull GroovyInstallation installation, @NonNull Node node) {
+        InstallSourceProperty installers = installation.getProperties().get(InstallSourceProperty.class);
+        if (installers == null || installers.installers.isEmpty()) {
+            return true;
+        }
+        for (ToolInstaller installer : installers.installers) {
+            if (installer.appliesTo(node)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static void prewarm(@NonNull Computer c, @NonNull TaskListener listener, boolean probeVersion) {
+        Node node = c.getNode();
+        VirtualChannel channel = c.getChannel();
+        if (node == null || channel == null) {
+            return;
+        }
+        Map<String, Status> statuses = new ConcurrentHashMap<>();
+        List<GroovyInstallation> installations = new ArrayList<>();
+        for (GroovyInstallation installation : Jenkins.get().getDescriptorByType(GroovyInstallation.DescriptorImpl.class).getInstallations()) {
+            if (applies(installation, node)) {
+                installations.add(installation);
+                statuses.put(installation.getName(), new Status(installation.getName()));
+            }
+        }
+        STATUSES.put(node.getNodeName(), statuses);
+        for (GroovyInstallation installation : installations) {
+            Status status = statuses.get(installation.getName());
+            long start = System.nanoTime();
+            listener.getLogger().println("Preparing Groovy installation " + installation.getName());
+            try {
+                GroovyInstallation local = installation.forNode(node, listener);
+                status.home = local.getHome();
+                String exe = local.getExecutable(channel);
+                if (exe == null) {
+                    throw new IOException("Cannot find the Groovy executable in " + local.getHome());
+                }
+                status.executable = exe;
+                if (probeVersion) {
+                    status.version = version(node, listener, exe);
+                }
+                status.state = "ready";
+                listener.getLogger().println("Groovy installation " + installation.getName() + " is ready at " + exe
+                        + (status.version != null ? " (" + status.version + ")" : ""));
+            } catch (IOException | RuntimeException x) {
+                status.state = "failed";
+                status.error = x.toString();
+                Functions.printStackTrace(x, listener.error("Failed to prepare Groovy installation " + installation.getName()));
+            } catch (InterruptedException x) {
+                status.state = "failed";
+                status.error = x.toString();
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                status.millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static String version(Node node, TaskListener listener, String exe) throws IOException, InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int exit = node.createLauncher(listener).launch().cmds(exe, "--version").stdout(out).quiet(true).start()
+                .joinWithTimeout(1, TimeUnit.MINUTES, listener);
+        String text = out.toString(Charset.defaultCharset()).trim();
+        if (exit != 0) {
+            throw new IOException(exe + " --version exited with " + exit + ": " + text);
+        }
+        int eol = text.indexOf('\n');
+        return eol == -1 ? text : text.substring(0, eol).trim();
+    }
+
+    /**
+     * Runs after {@link InstallationCache.Invalidator} has dropped whatever was known about the node.
+     */
+    @Extension(ordinal = -100)
+    public static final class Listener extends ComputerListener {
+
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            Groovy.DescriptorImpl config = Jenkins.get().getDescriptorByType(Groovy.DescriptorImpl.class);
+            if (config == null || !config.isPrewarm() || !(c instanceof SlaveComputer)) {
+                return;
+            }
+            // the listener passed here is closed once the launch completes, so use the one of the agent log
+            TaskListener log = ((SlaveComputer) c).getListener();
+            boolean probeVersion = config.isPrewarmVersion();
+            Computer.threadPoolForRemoting.submit(() -> {
+                try {
+                    prewarm(c, log, probeVersion);
+                } catch (RuntimeException x) {
+                    LOGGER.log(Level.WARNING, "failed to prepare Groovy installations on " + c.getName(), x);
+                }
+            });
+        }
+
+        @Override
+        public void onConfigurationChange() {
+            // drop nodes which are gone
+            STATUSES.keySet().retainAll(nodeNames());
+        }
+
+        private static List<String> nodeNames() {
+            List<String> names = new ArrayList<>();
+            for (Node node : Jenkins.get().getNodes()) {
+                names.add(node.getNodeName());
+            }
+            return names;
+        }
+
+    }
+
+    /**
+     * Shows the outcome on the agent page.
+     */
+    public static final class StatusAction implements Action, StaplerProxy {
+
+        private final Computer computer;
+
+        StatusAction(Computer computer) {
+            this.computer = computer;
+        }
+
+        public Computer getComputer() {
+            return computer;
+        }
+
+        public List<Status> getStatuses() {
+            return InstallationPrewarm.getStatuses(computer.getName());
+        }
+
+        @Override
+        public Object getTarget() {
+            computer.checkPermission(Computer.EXTENDED_READ);
+            return this;
+        }
+
+        @Override
+        public String getIconFileName() {
+            return computer.hasPermission(Computer.EXTENDED_READ) && !getStatuses().isEmpty() ? "symbol-terminal" : null;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Groovy installations";
+        }
+
+        @Override
+        public String getUrlName() {
+            return "groovy-installations";
+        }
+
+    }
+
+    @Extension
+    public static final class StatusActionFactory extends TransientComputerActionFactory {
+
+        @Override
+        public Collection<? extends Action> createFor(Computer target) {
+            return target instanceof SlaveComputer ? Collections.singletonList(new StatusAction(target)) : Collections.emptyList();
+        }
+
+    }
+
+}
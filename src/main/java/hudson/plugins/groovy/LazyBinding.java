@@ -0,0 +1,125 @@
+package hudson.plugins.groovy;
+
+import groovy.lang.Binding;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The binding of a system Groovy script, computing variables of {@link SystemGroovyBindingContributor}s as the script first reads them,
+ * and counting how often it reads each of them.
+ */
+final class LazyBinding extends Binding {
+
+    private final AbstractBuild<?, ?> build;
+    private final TaskListener listener;
+    /** Contributed variables, whether computed yet or not. */
+    private final Map<String, Contribution> contributions = new LinkedHashMap<>();
+
+    private static final class Contribution {
+
+        final SystemGroovyBindingContributor contributor;
+        /** Whether the variable has a value now, either computed or set by the script. */
+        boolean resolved;
+        boolean computed;
+        long accesses;
+        long nanos;
+
+        Contribution(SystemGroovyBindingContributor contributor) {
+            this.contributor = contributor;
+        }
+
+    }
+
+    /**
+     * @param variables the variables set by the builder itself, which contributors cannot override
+     */
+    LazyBinding(Map<Object, Object> variables, AbstractBuild<?, ?> build, TaskListener listener) {
+        // HashMap, as Hashtable does not accept nulls
+        super(new HashMap<>(variables));
+        this.build = build;
+        this.listener = listener;
+        for (SystemGroovyBindingContributor contributor : SystemGroovyBindingContributor.all()) {
+            for (String name : contributor.getVariableNames(build)) {
+                if (!variables.containsKey(name)) {
+                    contributions.putIfAbsent(name, new Contribution(contributor));
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized Object getVariable(String name) {
+        Contribution contribution = contributions.get(name);
+        if (contribution != null) {
+            contribution.accesses++;
+            if (!contribution.resolved) {
+                resolve(name, contribution);
+            }
+        }
+        return super.getVariable(name);
+    }
+
+    @Override
+    public synchronized void setVariable(String name, Object value) {
+        Contribution contribution = contributions.get(name);
+        if (contribution != null) {
+            contribution.resolved = true; // overwritten by the script, so never computed
+        }
+        super.setVariable(name, value);
+    }
+
+    @Override
+    public synchronized boolean hasVariable(String name) {
+        return contributions.containsKey(name) || super.hasVariable(name);
+    }
+
+    /**
+     * Computes all contributed variables which are not yet, since the caller may read any of them.
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public synchronized Map getVariables() {
+        contributions.forEach((name, contribution) -> {
+            if (!contribution.resolved) {
+                resolve(name, contribution);
+            }
+        });
+        return super.getVariables();
+    }
+
+    private void resolve(String name, Contribution contribution) {
+        long start = System.nanoTime();
+        Object value;
+        try {
+            value = contribution.contributor.getValue(name, build, listener);
+        } catch (IOException x) {
+            throw new UncheckedIOException("Could not compute the variable " + name, x);
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing the variable " + name, x);
+        } finally {
+            contribution.nanos = System.nanoTime() - start;
+            contribution.resolved = true;
+            contribution.computed = true;
+        }
+        super.setVariable(name, value);
+    }
+
+    /**
+     * Adds what this binding saw to the controller-wide statistics, once the script is done.
+     */
+    synchronized void record() {
+        PhaseStatistics statistics = PhaseStatistics.get();
+        if (statistics == null) {
+            return;
+        }
+        contributions.forEach((name, contribution) ->
+                statistics.addBinding(name, contribution.contributor.getClass().getName(), contribution.accesses, contribution.computed ? contribution.nanos : -1));
+    }
+
+}
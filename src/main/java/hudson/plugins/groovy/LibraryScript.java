@@ -0,0 +1,73 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.SecureGroovyScript;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * One version of a script in the {@link ScriptLibrary}.
+ */
+public class LibraryScript extends AbstractDescribableImpl<LibraryScript> {
+
+    private final String name;
+    private final String version;
+    private final SecureGroovyScript script;
+    private transient String digest;
+
+    @DataBoundConstructor
+    public LibraryScript(String name, String version, SecureGroovyScript script) {
+        this.name = Util.fixNull(name).trim();
+        this.version = Util.fixNull(version).trim();
+        this.script = script.configuringWithNonKeyItem();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * The script as run by system Groovy scripts; its sandbox and class path settings do not apply to {@link Groovy} builders.
+     */
+    public SecureGroovyScript getScript() {
+        return script;
+    }
+
+    /**
+     * SHA-256 digest of the script text, identifying it in agent caches.
+     */
+    @NonNull String getDigest() {
+        if (digest == null) {
+            digest = AbstractGroovy.digest(Util.fixNull(script.getScript()));
+        }
+        return digest;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<LibraryScript> {
+
+        @Override
+        public String getDisplayName() {
+            return "Library script";
+        }
+
+        public FormValidation doCheckName(@QueryParameter String value) {
+            return Util.fixEmptyAndTrim(value) == null ? FormValidation.error("A name is required") : FormValidation.ok();
+        }
+
+        public FormValidation doCheckVersion(@QueryParameter String value) {
+            return Util.fixEmptyAndTrim(value) == null ? FormValidation.error("A version is required") : FormValidation.ok();
+        }
+
+    }
+
+}
@@ -0,0 +1,186 @@
+package hudson.plugins.groovy;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Descriptor;
+import hudson.model.Node;
+import hudson.util.ListBoxModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import jenkins.security.MasterToSlaveCallable;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * A script of the {@link ScriptLibrary} for {@link Groovy} builders.
+ * <p>Agents keep the scripts they ran in {@code caches/groovy-library} under the agent root, by digest,
+ * so a script is only sent, compressed, the first time an agent needs a given version of it.
+ */
+public class LibraryScriptSource extends ScriptSource {
+
+    static final String DIRECTORY = "caches/groovy-library";
+
+    private final String name;
+    private final String version;
+
+    /**
+     * @param version a version, or empty for the last one listed; both may refer to build variables
+     */
+    @DataBoundConstructor
+    public LibraryScriptSource(String name, String version) {
+        this.name = name;
+        this.version = Util.fixEmptyAndTrim(version);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public FilePath getScriptFile(FilePath projectWorkspace, AbstractBuild<?, ?> build, BuildListener listener) throws IOException, InterruptedException {
+        EnvVars env = build.getEnvironment(listener);
+        LibraryScript script = ScriptLibrary.get().getExistingScript(env.expand(name), version != null ? env.expand(version) : null);
+        Node node = build.getBuiltOn();
+        FilePath root = node != null ? node.getRootPath() : null;
+        if (root == null) {
+            throw new IOException("Cannot find the root directory of " + build.getBuiltOnStr());
+        }
+        FilePath dir = root.child(DIRECTORY);
+        // named after the script, which precompiled mode turns into its class name
+        String fileName = Groovy.className(script.getName()) + ".groovy";
+        String digest = script.getDigest();
+        if (!dir.act(new Lookup(dir.getRemote(), digest, fileName))) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream os = new GZIPOutputStream(compressed)) {
+                os.write(Util.fixNull(script.getScript().getScript()).getBytes(StandardCharsets.UTF_8));
+            }
+            dir.act(new Store(dir.getRemote(), digest, fileName, compressed.toByteArray()));
+        }
+        return dir.child(digest).child(fileName);
+    }
+
+    private static final class Lookup extends MasterToSlaveCallable<Boolean, IOException> {
+
+        private static final long serialVersionUID = 1;
+
+        private final String dir;
+        private final String digest;
+        private final String fileName;
+
+        Lookup(String dir, String digest, String fileName) {
+            this.dir = dir;
+            this.digest = digest;
+            this.fileName = fileName;
+        }
+
+        /**
+         * Whether the script is cached, with the expected content: an altered copy is a miss, so it gets replaced.
+         */
+        @Override
+        public Boolean call() throws IOException {
+            File f = new File(dir, digest + '/' + fileName);
+            return f.isFile() && digest.equals(sha256(Files.readAllBytes(f.toPath())));
+        }
+
+    }
+
+    /**
+     * Unpacks a script into the cache, checking that it arrived intact.
+     */
+    private static final class Store extends MasterToSlaveCallable<Void, IOException> {
+
+        private static final long serialVersionUID = 1;
+
+        private final String dir;
+        private final String digest;
+        private final String fileName;
+        private final byte[] compressed;
+
+        Store(String dir, String digest, String fileName, byte[] compressed) {
+            this.dir = dir;
+            this.digest = digest;
+            this.fileName = fileName;
+            this.compressed = compressed;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            byte[] text;
+            try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+                text = is.readAllBytes();
+            }
+            String actual = sha256(text);
+            if (!actual.equals(digest)) {
+                throw new IOException("Library script " + fileName + " has digest " + actual + " rather than " + digest);
+            }
+            File d = new File(dir, digest);
+            Files.createDirectories(d.toPath());
+            File tmp = new File(d, fileName + '.' + UUID.randomUUID() + ".tmp");
+            try {
+                Files.write(tmp.toPath(), text);
+                Files.move(tmp.toPath(), new File(d, fileName).toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+            return null;
+        }
+
+    }
+
+    private static String sha256(byte[] text) throws IOException {
+        try {
+            return Util.toHexString(MessageDigest.getInstance("SHA-256").digest(text));
+        } catch (NoSuchAlgorithmException x) {
+            throw new IOException(x);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        LibraryScriptSource that = (LibraryScriptSource) o;
+
+        return (name != null ? name.equals(that.name) : that.name == null) && (version != null ? version.equals(that.version) : that.version == null);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (name != null ? name.hashCode() : 0) + (version != null ? version.hashCode() : 0);
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<ScriptSource> {
+
+        @Override
+        public String getDisplayName() {
+            return "Groovy script from the library";
+        }
+
+        public ListBoxModel doFillNameItems() {
+            return ScriptLibrary.get().nameItems();
+        }
+
+    }
+
+}
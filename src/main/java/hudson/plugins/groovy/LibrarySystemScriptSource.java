@@ -0,0 +1,76 @@
+package hudson.plugins.groovy;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.Descriptor;
+import hudson.model.TaskListener;
+import hudson.util.ListBoxModel;
+import java.io.IOException;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.SecureGroovyScript;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * A script of the {@link ScriptLibrary} for {@link SystemGroovy} builders,
+ * run with the sandbox and approval settings it was saved with.
+ */
+public class LibrarySystemScriptSource extends SystemScriptSource {
+
+    private final String name;
+    private final String version;
+
+    /**
+     * @param version a version, or empty for the last one listed; both may refer to build variables
+     */
+    @DataBoundConstructor
+    public LibrarySystemScriptSource(String name, String version) {
+        this.name = name;
+        this.version = Util.fixEmptyAndTrim(version);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public SecureGroovyScript getSecureGroovyScript(FilePath projectWorkspace, AbstractBuild<?, ?> build, TaskListener listener) throws IOException, InterruptedException {
+        EnvVars env = build.getEnvironment(listener);
+        return ScriptLibrary.get().getExistingScript(env.expand(name), version != null ? env.expand(version) : null).getScript();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        LibrarySystemScriptSource that = (LibrarySystemScriptSource) o;
+
+        return (name != null ? name.equals(that.name) : that.name == null) && (version != null ? version.equals(that.version) : that.version == null);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (name != null ? name.hashCode() : 0) + (version != null ? version.hashCode() : 0);
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<SystemScriptSource> {
+
+        @Override
+        public String getDisplayName() {
+            return "Groovy script from the library";
+        }
+
+        public ListBoxModel doFillNameItems() {
+            return ScriptLibrary.get().nameItems();
+        }
+
+    }
+
+}
@@ -0,0 +1,260 @@
+package hudson.plugins.groovy;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.console.LineTransformationOutputStream;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.FormValidation;
+import hudson.util.NamingThreadFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Runs several independent Groovy scripts at once, each in its own JVM as with {@link Groovy},
+ * with the same installation, parameters, properties, Java options and class path for all of them.
+ * Output lines are prefixed with the number of the script which printed them.
+ * The build step fails if any script fails.
+ */
+public class ParallelGroovy extends AbstractGroovy {
+
+    static final int DEFAULT_CONCURRENCY = 4;
+
+    private final List<ScriptSource> scriptSources;
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private String groovyName;
+    private String parameters;
+    private String scriptParameters;
+    private String properties;
+    private String javaOpts;
+    private String classPath;
+
+    @DataBoundConstructor
+    public ParallelGroovy(List<ScriptSource> scriptSources) {
+        this.scriptSources = scriptSources != null ? new ArrayList<>(scriptSources) : new ArrayList<>();
+    }
+
+    public List<ScriptSource> getScriptSources() {
+        return Collections.unmodifiableList(scriptSources);
+    }
+
+    public int getConcurrency() {
+        return concurrency > 0 ? concurrency : DEFAULT_CONCURRENCY;
+    }
+
+    @DataBoundSetter
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public String getGroovyName() {
+        return groovyName;
+    }
+
+    @DataBoundSetter
+    public void setGroovyName(String groovyName) {
+        this.groovyName = Util.fixEmpty(groovyName);
+    }
+
+    public String getParameters() {
+        return parameters;
+    }
+
+    @DataBoundSetter
+    public void setParameters(String parameters) {
+        this.parameters = Util.fixEmpty(parameters);
+    }
+
+    public String getScriptParameters() {
+        return scriptParameters;
+    }
+
+    @DataBoundSetter
+    public void setScriptParameters(String scriptParameters) {
+        this.scriptParameters = Util.fixEmpty(scriptParameters);
+    }
+
+    public String getProperties() {
+        return properties;
+    }
+
+    @DataBoundSetter
+    public void setProperties(String properties) {
+        this.properties = Util.fixEmpty(properties);
+    }
+
+    public String getJavaOpts() {
+        return javaOpts;
+    }
+
+    @DataBoundSetter
+    public void setJavaOpts(String javaOpts) {
+        this.javaOpts = Util.fixEmpty(javaOpts);
+    }
+
+    public String getClassPath() {
+        return classPath;
+    }
+
+    @DataBoundSetter
+    public void setClassPath(String classPath) {
+        this.classPath = Util.fixEmpty(classPath);
+    }
+
+    @Override
+    public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+        if (scriptSources.isEmpty()) {
+            listener.fatalError("There are no scripts configured for this builder");
+            return false;
+        }
+        FilePath ws = build.getWorkspace();
+        PhaseTimer timer = new PhaseTimer("Parallel Groovy");
+        timer.context(build);
+        timer.start("prepare");
+        // Everything which looks up the current node happens here on the executor thread; only the launches run in the pool.
+        List<FilePath> scripts = new ArrayList<>();
+        List<List<String>> cmds = new ArrayList<>();
+        List<Map<String, String>> envs = new ArrayList<>();
+        int[] results = new int[scriptSources.size()];
+        try {
+            EnvVars env = Groovy.buildEnvironment(build, listener);
+            String executable = null;
+            for (ScriptSource source : scriptSources) {
+                Groovy groovy = new Groovy(source, groovyName, parameters, scriptParameters, properties, javaOpts, classPath);
+                FilePath script = source.getScriptFile(ws, build, listener);
+                scripts.add(script);
+                if (executable == null) {
+                    executable = groovy.buildExecutable(listener, env, launcher.getChannel());
+                }
+                cmds.add(groovy.buildCommandLine(build, executable, env, script, launcher.isUnix()));
+                envs.add(groovy.buildLaunchEnvironment(build, listener, env));
+            }
+            timer.start("execution");
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(getConcurrency(), scripts.size()),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "ParallelGroovy " + build.getFullDisplayName()));
+            try {
+                List<Future<Integer>> futures = new ArrayList<>();
+                for (int i = 0; i < scripts.size(); i++) {
+                    List<String> cmd = cmds.get(i);
+                    Map<String, String> env = envs.get(i);
+                    OutputStream out = new PrefixedOutputStream(listener.getLogger(), "[#" + (i + 1) + "] ");
+                    futures.add(pool.submit(() -> {
+                        try (out) {
+                            return launcher.launch().cmds(cmd).envs(env).stdout(out).pwd(ws).join();
+                        }
+                    }));
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        results[i] = futures.get(i).get();
+                    } catch (ExecutionException x) {
+                        Throwable cause = x.getCause();
+                        if (cause instanceof IOException) {
+                            Util.displayIOException((IOException) cause, listener);
+                        }
+                        cause.printStackTrace(listener.error("[#" + (i + 1) + "] command execution failed"));
+                        results[i] = -1;
+                    }
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        } catch (IOException e) {
+            Util.displayIOException(e, listener);
+            e.printStackTrace(listener.fatalError("Unable to prepare the scripts"));
+            return false;
+        } finally {
+            for (int i = 0; i < scripts.size(); i++) {
+                if (scriptSources.get(i) instanceof StringScriptSource) {
+                    try {
+                        scripts.get(i).delete();
+                    } catch (IOException e) {
+                        Util.displayIOException(e, listener);
+                        e.printStackTrace(listener.fatalError("Unable to delete script file " + scripts.get(i)));
+                    }
+                }
+            }
+        }
+        timer.record(build, listener);
+        boolean success = true;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != 0) {
+                listener.getLogger().println("[#" + (i + 1) + "] failed with exit code " + results[i]);
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Writes each complete line to the build log at once, behind a prefix, so output of concurrent scripts does not interleave within lines.
+     */
+    private static final class PrefixedOutputStream extends LineTransformationOutputStream {
+
+        private final PrintStream logger;
+        private final byte[] prefix;
+
+        PrefixedOutputStream(PrintStream logger, String prefix) {
+            this.logger = logger;
+            this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        protected void eol(byte[] b, int len) throws IOException {
+            synchronized (logger) {
+                logger.write(prefix);
+                logger.write(b, 0, len);
+                logger.flush();
+            }
+        }
+
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends AbstractGroovyDescriptor {
+
+        public DescriptorImpl() {
+            super(ParallelGroovy.class);
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Execute Groovy scripts in parallel";
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+            return true;
+        }
+
+        public GroovyInstallation[] getInstallations() {
+            return ((Groovy.DescriptorImpl) Jenkins.get().getDescriptorOrDie(Groovy.class)).getInstallations();
+        }
+
+        public FormValidation doCheckConcurrency(@QueryParameter int value) {
+            return value > 0 ? FormValidation.ok() : FormValidation.error("Must be at least 1");
+        }
+
+    }
+
+}
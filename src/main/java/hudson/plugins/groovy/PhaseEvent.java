@@ -0,0 +1,49 @@
+package hudson.plugins.groovy;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Java Flight Recorder event for one phase of a Groovy step, as measured by {@link PhaseTimer},
+ * so recordings of the controller show what the time spent in Groovy steps went to and which builds it was for.
+ */
+@Name("hudson.plugins.groovy.Phase")
+@Label("Groovy Phase")
+@Category({"Jenkins", "Groovy"})
+@Description("A phase of a Groovy build step, such as producing, compiling or running the script")
+@StackTrace(false)
+@Restricted(NoExternalUse.class)
+public final class PhaseEvent extends jdk.jfr.Event {
+
+    @Label("Step")
+    String step;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Job")
+    String job;
+
+    @Label("Build Number")
+    int build;
+
+    @Label("Script Digest")
+    @Description("SHA-256 digest of the script text, if known")
+    String scriptDigest;
+
+    @Label("Script Size")
+    @DataAmount
+    long scriptSize;
+
+    @Label("Payload Size")
+    @Description("Size of the serialized input or output passed along with the script, if any")
+    @DataAmount
+    long payloadSize;
+
+}
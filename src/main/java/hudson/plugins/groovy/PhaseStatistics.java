@@ -0,0 +1,189 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.RootAction;
+import hudson.model.Run;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+
+/**
+ * Controller-wide histograms of {@link PhaseTimer} phases, served as JSON from {@code /groovy-timings/json} to administrators.
+ * Percentiles are computed over the latest {@link #SAMPLES} samples of each phase;
+ * the slowest steps since startup are listed along with their builds.
+ * Also counts how often each variable of a {@link SystemGroovyBindingContributor} was offered to, computed for and read by system Groovy scripts.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class PhaseStatistics implements RootAction {
+
+    static final int SAMPLES = 1024;
+    static final int SLOWEST = 20;
+
+    static @CheckForNull PhaseStatistics get() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        return jenkins != null ? ExtensionList.lookupSingleton(PhaseStatistics.class) : null;
+    }
+
+    /** By step, then phase; the total of each step is kept as the phase {@code total}. */
+    private final Map<String, Map<String, Histogram>> histograms = new TreeMap<>();
+    private final List<Slow> slowest = new ArrayList<>();
+    /** By variable name. */
+    private final Map<String, Variable> variables = new TreeMap<>();
+
+    synchronized void add(@NonNull PhaseTimer timer, @CheckForNull Run<?, ?> run) {
+        Map<String, Histogram> byPhase = histograms.computeIfAbsent(timer.getStep(), k -> new TreeMap<>());
+        for (Map.Entry<String, Long> phase : timer.getPhases().entrySet()) {
+            byPhase.computeIfAbsent(phase.getKey(), k -> new Histogram()).add(phase.getValue());
+        }
+        long total = timer.getTotal();
+        byPhase.computeIfAbsent("total", k -> new Histogram()).add(total);
+        if (run != null && (slowest.size() < SLOWEST || total > slowest.get(slowest.size() - 1).nanos)) {
+            slowest.add(new Slow(timer.getStep(), run.getParent().getFullName(), run.getNumber(), total));
+            slowest.sort(Comparator.comparingLong((Slow s) -> s.nanos).reversed());
+            if (slowest.size() > SLOWEST) {
+                slowest.remove(SLOWEST);
+            }
+        }
+    }
+
+    /**
+     * Records the fate of a contributed variable in one script.
+     * @param nanos the time spent computing it, or -1 if it was not computed
+     */
+    synchronized void addBinding(@NonNull String name, @NonNull String contributor, long accesses, long nanos) {
+        Variable variable = variables.computeIfAbsent(name, k -> new Variable());
+        variable.contributor = contributor;
+        variable.offered++;
+        variable.accesses += accesses;
+        if (nanos >= 0) {
+            variable.computed++;
+            variable.nanos += nanos;
+        }
+    }
+
+    synchronized JSONObject toJSON() {
+        JSONObject steps = new JSONObject();
+        histograms.forEach((step, byPhase) -> {
+            JSONObject phases = new JSONObject();
+            byPhase.forEach((phase, histogram) -> phases.put(phase, histogram.toJSON()));
+            steps.put(step, phases);
+        });
+        JSONArray slow = new JSONArray();
+        for (Slow s : slowest) {
+            slow.add(new JSONObject().element("step", s.step).element("job", s.job).element("build", s.build).element("ms", millis(s.nanos)));
+        }
+        JSONObject bindings = new JSONObject();
+        variables.forEach((name, v) -> bindings.put(name, new JSONObject()
+                .element("contributor", v.contributor)
+                .element("offered", v.offered)
+                .element("computed", v.computed)
+                .element("accesses", v.accesses)
+                .element("ms", millis(v.nanos))));
+        return new JSONObject().element("steps", steps).element("slowest", slow).element("bindings", bindings);
+    }
+
+    synchronized void clear() {
+        histograms.clear();
+        slowest.clear();
+        variables.clear();
+    }
+
+    public HttpResponse doJson() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        return HttpResponses.okJSON(toJSON());
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Groovy timings";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "groovy-timings";
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static final class Histogram {
+
+        private long count;
+        private long max;
+        /** Ring buffer of the latest samples. */
+        private final long[] samples = new long[SAMPLES];
+
+        void add(long nanos) {
+            samples[(int) (count % SAMPLES)] = nanos;
+            count++;
+            max = Math.max(max, nanos);
+        }
+
+        JSONObject toJSON() {
+            long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, SAMPLES));
+            Arrays.sort(sorted);
+            return new JSONObject()
+                    .element("count", count)
+                    .element("p50", millis(percentile(sorted, 50)))
+                    .element("p95", millis(percentile(sorted, 95)))
+                    .element("p99", millis(percentile(sorted, 99)))
+                    .element("max", millis(max));
+        }
+
+        private static long percentile(long[] sorted, int p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p / 100.0 * sorted.length) - 1)];
+        }
+
+    }
+
+    private static final class Variable {
+
+        String contributor;
+        long offered;
+        long computed;
+        long accesses;
+        long nanos;
+
+    }
+
+    private static final class Slow {
+
+        final String step;
+        final String job;
+        final int build;
+        final long nanos;
+
+        Slow(String step, String job, int build, long nanos) {
+            this.step = step;
+            this.job = job;
+            this.build = build;
+            this.nanos = nanos;
+        }
+
+    }
+
+}
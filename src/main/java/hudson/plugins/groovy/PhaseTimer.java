@@ -0,0 +1,167 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the consecutive phases of a single Groovy step, such as producing the script, resolving the installation and running it.
+ * Starting a phase ends the previous one.
+ * Once {@link #record recorded}, the timings are attached to the build as {@link GroovyTimings}
+ * and added to the controller-wide {@link PhaseStatistics}.
+ * Each phase is also a {@link PhaseEvent} for Java Flight Recorder, carrying whatever is known about the build and script by the time it ends.
+ */
+final class PhaseTimer implements Serializable {
+
+    private static final long serialVersionUID = 1;
+
+    private final String step;
+    /** Nanoseconds by phase, in the order the phases started. */
+    private final LinkedHashMap<String, Long> phases = new LinkedHashMap<>();
+    private @CheckForNull String current;
+    private long started;
+    private transient @CheckForNull PhaseEvent event;
+    private transient @CheckForNull String job;
+    private transient int build;
+    /** The script text, digested and measured only once an event is committed. */
+    private transient @CheckForNull String scriptText;
+    private transient @CheckForNull String scriptDigest;
+    private transient long scriptSize;
+    private transient long payloadSize;
+
+    PhaseTimer(@NonNull String step) {
+        this.step = step;
+    }
+
+    /**
+     * Ends the current phase, if any, and starts another one.
+     * Starting a phase which has already run adds to its time.
+     */
+    void start(@NonNull String phase) {
+        long now = System.nanoTime();
+        end(now);
+        current = phase;
+        started = now;
+        event = new PhaseEvent();
+        event.begin();
+    }
+
+    /**
+     * Names the build the step runs for, for events.
+     */
+    void context(@CheckForNull Run<?, ?> run) {
+        if (run != null) {
+            job = run.getParent().getFullName();
+            build = run.getNumber();
+        }
+    }
+
+    /**
+     * Sets the script the step runs, for events.
+     */
+    void script(@CheckForNull String text) {
+        if (text != null) {
+            scriptText = text;
+            scriptDigest = null;
+        }
+    }
+
+    /**
+     * Sets the size of the serialized data passed to or from the script, for events.
+     */
+    void payload(long size) {
+        payloadSize = size;
+    }
+
+    /**
+     * Ends the current phase, if any.
+     */
+    void stop() {
+        end(System.nanoTime());
+    }
+
+    private void end(long now) {
+        if (current != null) {
+            phases.merge(current, now - started, Long::sum);
+            commit(current);
+            current = null;
+        }
+    }
+
+    private void commit(String phase) {
+        PhaseEvent e = event;
+        event = null;
+        if (e == null) {
+            return;
+        }
+        e.end();
+        if (e.shouldCommit()) {
+            if (scriptDigest == null && scriptText != null) {
+                scriptDigest = AbstractGroovy.digest(scriptText);
+                scriptSize = scriptText.getBytes(StandardCharsets.UTF_8).length;
+            }
+            e.step = step;
+            e.phase = phase;
+            e.job = job;
+            e.build = build;
+            e.scriptDigest = scriptDigest;
+            e.scriptSize = scriptSize;
+            e.payloadSize = payloadSize;
+            e.commit();
+        }
+    }
+
+    @NonNull String getStep() {
+        return step;
+    }
+
+    /** Nanoseconds by phase. */
+    @NonNull Map<String, Long> getPhases() {
+        return phases;
+    }
+
+    long getTotal() {
+        long total = 0;
+        for (long t : phases.values()) {
+            total += t;
+        }
+        return total;
+    }
+
+    /**
+     * Ends the current phase and records the timings.
+     * @param run the build to attach the timings to, if known
+     * @param listener if not null, a one-line summary is printed to it
+     */
+    void record(@CheckForNull Run<?, ?> run, @CheckForNull TaskListener listener) {
+        stop();
+        if (phases.isEmpty()) {
+            return;
+        }
+        if (run != null) {
+            GroovyTimings.forRun(run).add(this);
+        }
+        PhaseStatistics statistics = PhaseStatistics.get();
+        if (statistics != null) {
+            statistics.add(this, run);
+        }
+        if (listener != null) {
+            listener.getLogger().println(summary());
+        }
+    }
+
+    String summary() {
+        StringBuilder b = new StringBuilder(step).append(" timings: ");
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            b.append(phase.getKey()).append(' ').append(TimeUnit.NANOSECONDS.toMillis(phase.getValue())).append(" ms, ");
+        }
+        return b.append("total ").append(TimeUnit.NANOSECONDS.toMillis(getTotal())).append(" ms").toString();
+    }
+
+}
@@ -0,0 +1,243 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import jenkins.security.MasterToSlaveCallable;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Classes compiled by {@code groovyc} from scripts of {@link Groovy} builders in precompiled mode, kept on each agent
+ * in {@code caches/groovy-classes} under the agent root.
+ * <p>Entries are keyed by the SHA-256 digest of the script, its class name, the class path and the jars of the Groovy installation,
+ * so any change to those compiles the script again.
+ * Once the cache exceeds {@link #MAX_SIZE} megabytes, the least recently used entries are deleted.
+ */
+@Restricted(NoExternalUse.class)
+public final class PrecompiledScripts {
+
+    static final String DIRECTORY = "caches/groovy-classes";
+
+    /** Name of the class of inline scripts, whose files have random names. */
+    static final String INLINE_CLASS = "InlineScript";
+
+    private static final String MAIN = ".main";
+
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "tunable from the script console")
+    public static /* not final */ long MAX_SIZE = SystemProperties.getLong(PrecompiledScripts.class.getName() + ".maxSize", 256L);
+
+    private PrecompiledScripts() {}
+
+    /**
+     * Gets the classes of a script, compiling it first if need be.
+     * @param script the script on the agent
+     * @param className the name of the class to compile it to
+     * @param classPath the class path of the script, if any
+     * @param cmd the {@code groovyc} executable
+     * @return the directory holding the classes
+     * @throws AbortException if the script does not compile; the compiler output is in the build log
+     */
+    static @NonNull FilePath get(@NonNull FilePath root, @NonNull FilePath script, @NonNull String className, @CheckForNull String classPath,
+                                 @NonNull String groovyHome, @NonNull String cmd, @NonNull Launcher launcher, @NonNull Map<String, String> env,
+                                 @NonNull TaskListener listener) throws IOException, InterruptedException {
+        FilePath dir = root.child(DIRECTORY);
+        Entry entry = dir.act(new Lookup(dir.getRemote(), script.getRemote(), className, classPath, groovyHome));
+        if (entry.tmp == null) {
+            return dir.child(entry.key);
+        }
+        FilePath tmp = dir.child(entry.tmp);
+        try {
+            listener.getLogger().println("Compiling " + script.getName() + " with groovyc");
+            List<String> compile = new ArrayList<>();
+            compile.add(cmd);
+            if (classPath != null) {
+                compile.add("-cp");
+                compile.add(classPath);
+            }
+            compile.add("-d");
+            compile.add(tmp.child("classes").getRemote());
+            compile.add(tmp.child("src/" + className + ".groovy").getRemote());
+            int result = launcher.launch().cmds(compile).envs(env).stdout(listener).pwd(script.getParent()).join();
+            if (result != 0) {
+                throw new AbortException("Compilation of " + script.getName() + " failed with exit code " + result);
+            }
+            return dir.child(dir.act(new Store(dir.getRemote(), entry.tmp, entry.key, className, MAX_SIZE * 1024 * 1024)));
+        } finally {
+            tmp.deleteRecursive();
+        }
+    }
+
+    /**
+     * The cache entry of a script, and if it has yet to be compiled, the temporary directory to compile it in,
+     * with the script copied to {@code src} under its class name.
+     */
+    private static final class Entry implements Serializable {
+
+        private static final long serialVersionUID = 1;
+
+        final String key;
+        final @CheckForNull String tmp;
+
+        Entry(String key, @CheckForNull String tmp) {
+            this.key = key;
+            this.tmp = tmp;
+        }
+
+    }
+
+    private static final class Lookup extends MasterToSlaveCallable<Entry, IOException> {
+
+        private static final long serialVersionUID = 1;
+
+        private final String dir;
+        private final String script;
+        private final String className;
+        private final String classPath;
+        private final String groovyHome;
+
+        Lookup(String dir, String script, String className, String classPath, String groovyHome) {
+            this.dir = dir;
+            this.script = script;
+            this.className = className;
+            this.classPath = classPath;
+            this.groovyHome = groovyHome;
+        }
+
+        @Override
+        public Entry call() throws IOException {
+            byte[] text = Files.readAllBytes(new File(script).toPath());
+            MessageDigest md;
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException x) {
+                throw new IllegalStateException(x);
+            }
+            md.update(text);
+            StringBuilder b = new StringBuilder().append('\n').append(className).append('\n').append(classPath).append('\n');
+            File[] jars = new File(groovyHome, "lib").listFiles((d, name) -> name.endsWith(".jar"));
+            if (jars != null) {
+                Arrays.sort(jars);
+                for (File jar : jars) {
+                    b.append(jar.getName()).append(' ').append(jar.length()).append('\n');
+                }
+            }
+            md.update(b.toString().getBytes(StandardCharsets.UTF_8));
+            String key = Util.toHexString(md.digest());
+            File d = new File(dir);
+            File main = new File(d, key + '/' + MAIN);
+            if (main.isFile()) {
+                main.setLastModified(System.currentTimeMillis());
+                return new Entry(key, null);
+            }
+            deleteAbandoned(d);
+            String tmp = key + '.' + UUID.randomUUID() + ".tmp";
+            File src = new File(d, tmp + "/src");
+            Files.createDirectories(src.toPath());
+            Files.createDirectories(new File(d, tmp + "/classes").toPath());
+            Files.write(new File(src, className + ".groovy").toPath(), text);
+            return new Entry(key, tmp);
+        }
+
+        private static void deleteAbandoned(File d) throws IOException {
+            File[] children = d.listFiles((f, name) -> name.endsWith(".tmp"));
+            long stale = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+            if (children != null) {
+                for (File child : children) {
+                    if (child.lastModified() < stale) {
+                        Util.deleteRecursive(child);
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Moves compiled classes into place, then prunes the cache.
+     */
+    private static final class Store extends MasterToSlaveCallable<String, IOException> {
+
+        private static final long serialVersionUID = 1;
+
+        private final String dir;
+        private final String tmp;
+        private final String key;
+        private final String className;
+        private final long maxBytes;
+
+        Store(String dir, String tmp, String key, String className, long maxBytes) {
+            this.dir = dir;
+            this.tmp = tmp;
+            this.key = key;
+            this.className = className;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public String call() throws IOException {
+            File d = new File(dir);
+            File classes = new File(d, tmp + "/classes");
+            Files.writeString(new File(classes, MAIN).toPath(), className, StandardCharsets.UTF_8);
+            File target = new File(d, key);
+            if (!new File(target, MAIN).isFile()) {
+                try {
+                    Files.move(classes.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException x) {
+                    if (!new File(target, MAIN).isFile()) {
+                        throw x;
+                    }
+                    // compiled concurrently by another build
+                }
+            }
+            prune(d);
+            return key;
+        }
+
+        private void prune(File d) throws IOException {
+            File[] entries = d.listFiles(f -> new File(f, MAIN).isFile());
+            if (entries == null) {
+                return;
+            }
+            Arrays.sort(entries, Comparator.comparingLong((File f) -> new File(f, MAIN).lastModified()).reversed());
+            long total = 0;
+            for (File entry : entries) {
+                total += size(entry);
+                if (total > maxBytes && !entry.getName().equals(key)) {
+                    Util.deleteRecursive(entry);
+                }
+            }
+        }
+
+        private static long size(File entry) throws IOException {
+            try (Stream<Path> files = Files.walk(entry.toPath())) {
+                return files.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.util.ListBoxModel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import jenkins.model.GlobalConfiguration;
+import net.sf.json.JSONObject;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.StaplerRequest2;
+
+/**
+ * Groovy scripts kept once on the controller, by name and version, for builds to refer to
+ * with {@link LibraryScriptSource} or {@link LibrarySystemScriptSource} rather than carrying a copy each.
+ */
+@Extension
+@Symbol("groovyScriptLibrary")
+public class ScriptLibrary extends GlobalConfiguration {
+
+    private volatile List<LibraryScript> scripts = Collections.emptyList();
+
+    public ScriptLibrary() {
+        load();
+    }
+
+    public static @NonNull ScriptLibrary get() {
+        return ExtensionList.lookupSingleton(ScriptLibrary.class);
+    }
+
+    public @NonNull List<LibraryScript> getScripts() {
+        return scripts;
+    }
+
+    @DataBoundSetter
+    public void setScripts(List<LibraryScript> scripts) {
+        this.scripts = scripts != null ? Collections.unmodifiableList(new ArrayList<>(scripts)) : Collections.emptyList();
+    }
+
+    @Override
+    public boolean configure(StaplerRequest2 req, JSONObject json) throws FormException {
+        setScripts(null);
+        req.bindJSON(this, json);
+        save();
+        return true;
+    }
+
+    /**
+     * Finds a script.
+     * @param version a version, or null for the last one listed under that name
+     */
+    public @CheckForNull LibraryScript getScript(@NonNull String name, @CheckForNull String version) {
+        LibraryScript found = null;
+        for (LibraryScript script : scripts) {
+            if (script.getName().equals(name)) {
+                if (version == null) {
+                    found = script;
+                } else if (version.equals(script.getVersion())) {
+                    return script;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Like {@link #getScript} but failing if there is no such script.
+     */
+    @NonNull LibraryScript getExistingScript(@NonNull String name, @CheckForNull String version) throws AbortException {
+        LibraryScript script = getScript(name, version);
+        if (script == null) {
+            throw new AbortException("No script " + name + (version != null ? " version " + version : "") + " in the Groovy script library");
+        }
+        return script;
+    }
+
+    /**
+     * The names of scripts, for {@code doFillNameItems}.
+     */
+    @NonNull ListBoxModel nameItems() {
+        TreeSet<String> names = new TreeSet<>();
+        for (LibraryScript script : scripts) {
+            names.add(script.getName());
+        }
+        ListBoxModel m = new ListBoxModel();
+        for (String name : names) {
+            m.add(name);
+        }
+        return m;
+    }
+
+}
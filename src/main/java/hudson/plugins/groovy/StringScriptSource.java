@@ -10,6 +10,7 @@ import hudson.util.FormValidation;
 import java.io.IOException;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.GroovySandbox;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.interceptor.RequirePOST;
 
@@ -21,6 +22,7 @@ import org.kohsuke.stapler.interceptor.RequirePOST;
 public class StringScriptSource extends ScriptSource {
 
     private String command;
+    private boolean stdin; // pass the script to Groovy on standard input rather than through a temporary file
 
     @DataBoundConstructor
     public StringScriptSource(String command) {
@@ -38,6 +40,15 @@ public class StringScriptSource extends ScriptSource {
         return command;
     }
 
+    public boolean isStdin() {
+        return stdin;
+    }
+
+    @DataBoundSetter
+    public void setStdin(boolean stdin) {
+        this.stdin = stdin;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -45,13 +56,13 @@ public class StringScriptSource extends ScriptSource {
 
         StringScriptSource that = (StringScriptSource) o;
 
-        return command != null ? command.equals(that.command) : that.command == null;
+        return (command != null ? command.equals(that.command) : that.command == null) && stdin == that.stdin;
 
     }
 
     @Override
     public int hashCode() {
-        return command != null ? command.hashCode() : 0;
+        return 31 * (command != null ? command.hashCode() : 0) + (stdin ? 1 : 0);
     }
 
     @Extension
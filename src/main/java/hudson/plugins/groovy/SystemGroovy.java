@@ -1,6 +1,5 @@
 package hudson.plugins.groovy;
 
-import groovy.lang.Binding;
 import hudson.Extension;
 import hudson.Launcher;
 import hudson.Util;
@@ -8,6 +7,7 @@ import hudson.model.BuildListener;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Descriptor;
+import hudson.model.TaskListener;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -16,8 +16,10 @@ import java.util.Map;
 import java.util.StringTokenizer;
 
 import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.StaplerRequest2;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -34,6 +36,7 @@ public class SystemGroovy extends AbstractGroovy {
 
     private SystemScriptSource source;
     private String bindings;
+    private boolean compileEachRun;
 
     @DataBoundConstructor
     public SystemGroovy(final SystemScriptSource source) {
@@ -61,7 +64,9 @@ public class SystemGroovy extends AbstractGroovy {
     public boolean perform(final AbstractBuild<?, ?> build, final Launcher launcher, final BuildListener listener)
             throws InterruptedException, IOException {
 
-        Object output = run(build, listener, launcher);
+        PhaseTimer timer = new PhaseTimer("System Groovy");
+        Object output = run(build, listener, launcher, timer);
+        timer.record(build, listener);
 
         if (output instanceof Boolean) {
             return (Boolean) output;
@@ -80,12 +85,15 @@ public class SystemGroovy extends AbstractGroovy {
     }
 
     /*packahge*/ Object run(AbstractBuild<?, ?> build, BuildListener listener, @CheckForNull Launcher launcher) throws IOException, InterruptedException {
+        return run(build, listener, launcher, null);
+    }
+
+    /*package*/ Object run(AbstractBuild<?, ?> build, BuildListener listener, @CheckForNull Launcher launcher, @CheckForNull PhaseTimer timer) throws IOException, InterruptedException {
         Jenkins jenkins = Jenkins.getInstance();
         if (jenkins == null) {
             throw new IllegalStateException("Jenkins instance is null - Jenkins is shutting down?");
         }
         @NonNull ClassLoader cl = jenkins.getPluginManager().uberClassLoader;
-        // Use HashMap as a backend for Binding as Hashtable does not accept nulls
         Map<Object, Object> binding = new HashMap<Object, Object>();
         binding.putAll(parseProperties(bindings));
         binding.put("build", build);
@@ -96,8 +104,35 @@ public class SystemGroovy extends AbstractGroovy {
             binding.put("listener", listener);
             binding.put("out", listener.getLogger());
         }
+        LazyBinding lazyBinding = new LazyBinding(binding, build, listener != null ? listener : TaskListener.NULL);
         try {
-            return source.getSecureGroovyScript(build.getWorkspace(), build, listener).evaluate(cl, new Binding(binding));
+            if (timer != null) {
+                timer.context(build);
+                timer.start("script");
+            }
+            SecureGroovyScript script = source.getSecureGroovyScript(build.getWorkspace(), build, listener);
+            if (timer != null) {
+                timer.script(script.getScript());
+                timer.start("admission");
+            }
+            try (SystemGroovyAdmission.Slot slot = SystemGroovyAdmission.get().admit(build, listener)) {
+                Object result;
+                try {
+                    if (compileEachRun) {
+                        if (timer != null) {
+                            timer.start("compile and execution");
+                        }
+                        result = script.evaluate(cl, lazyBinding, listener);
+                    } else {
+                        result = CompiledScriptCache.get().evaluate(script, cl, lazyBinding, listener, timer);
+                    }
+                } catch (Exception x) {
+                    slot.check(x);
+                    throw x;
+                }
+                slot.check(null);
+                return result;
+            }
         } catch (IOException x) {
             throw x;
         } catch (InterruptedException x) {
@@ -106,17 +141,74 @@ public class SystemGroovy extends AbstractGroovy {
             throw x;
         } catch (Exception x) {
             throw new IOException(x);
+        } finally {
+            lazyBinding.record();
         }
     }
 
     @Extension
     public static final class DescriptorImpl extends AbstractGroovyDescriptor {
 
+        private int maxConcurrent;
+        private long wallTimeLimit;
+        private long cpuTimeLimit;
+        private long allocationLimit;
+
         public DescriptorImpl() {
             super(SystemGroovy.class);
             load();
         }
 
+        static @CheckForNull DescriptorImpl get() {
+            Jenkins jenkins = Jenkins.getInstanceOrNull();
+            return jenkins != null ? jenkins.getDescriptorByType(DescriptorImpl.class) : null;
+        }
+
+        /**
+         * Maximum number of system Groovy scripts running at once, or 0 for no limit.
+         */
+        public int getMaxConcurrent() {
+            return Math.max(maxConcurrent, 0);
+        }
+
+        /**
+         * Wall clock seconds a system Groovy script may run for, or 0 for no limit.
+         */
+        public long getWallTimeLimit() {
+            return Math.max(wallTimeLimit, 0);
+        }
+
+        /**
+         * CPU seconds a system Groovy script may use on its thread, or 0 for no limit.
+         */
+        public long getCpuTimeLimit() {
+            return Math.max(cpuTimeLimit, 0);
+        }
+
+        /**
+         * Megabytes a system Groovy script may allocate on its thread, or 0 for no limit.
+         */
+        public long getAllocationLimit() {
+            return Math.max(allocationLimit, 0);
+        }
+
+        /**
+         * For the status shown on the global configuration page.
+         */
+        public SystemGroovyAdmission getAdmission() {
+            return SystemGroovyAdmission.get();
+        }
+
+        @Override
+        public boolean configure(StaplerRequest2 req, JSONObject json) throws FormException {
+            maxConcurrent = json.optInt("maxConcurrent", 0);
+            wallTimeLimit = json.optLong("wallTimeLimit", 0);
+            cpuTimeLimit = json.optLong("cpuTimeLimit", 0);
+            allocationLimit = json.optLong("allocationLimit", 0);
+            save();
+            return true;
+        }
+
         @Override
         public String getDisplayName() {
             return "Execute system Groovy script";
@@ -183,4 +275,17 @@ public class SystemGroovy extends AbstractGroovy {
         this.bindings = Util.fixEmpty(bindings);
     }
 
+    /**
+     * Whether the script is compiled afresh on every run rather than taken from the {@link CompiledScriptCache},
+     * so that static state of the classes it declares does not outlive the build.
+     */
+    public boolean isCompileEachRun() {
+        return compileEachRun;
+    }
+
+    @DataBoundSetter
+    public void setCompileEachRun(boolean compileEachRun) {
+        this.compileEachRun = compileEachRun;
+    }
+
 }
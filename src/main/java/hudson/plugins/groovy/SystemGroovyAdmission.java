@@ -0,0 +1,238 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Limits how many system Groovy scripts run at once on the controller, and how much wall clock time,
+ * thread CPU time and allocated memory each of them may use, as configured in {@link SystemGroovy.DescriptorImpl}.
+ * <p>Scripts waiting for a slot are queued per top-level folder (or top-level job),
+ * and slots are handed out to those queues in turn, so one busy folder cannot keep the others waiting.
+ * A script which exceeds a budget is interrupted and its build step fails;
+ * since interruption is cooperative, a script ignoring it still runs to completion, but fails all the same.
+ * <p>Scripts keep running on the calling thread, which holds the authentication and executor of the build.
+ */
+@Restricted(NoExternalUse.class)
+public final class SystemGroovyAdmission {
+
+    private static final SystemGroovyAdmission INSTANCE = new SystemGroovyAdmission();
+
+    public static SystemGroovyAdmission get() {
+        return INSTANCE;
+    }
+
+    /** Set while the current thread holds a slot, so that nested evaluations, e.g. of a token macro, do not need another one. */
+    private static final ThreadLocal<Slot> CURRENT = new ThreadLocal<>();
+
+    private int running;
+    /** Waiting tickets by queue; a queue which gets a slot moves to the end. */
+    private final LinkedHashMap<String, Deque<Ticket>> waiting = new LinkedHashMap<>();
+
+    private SystemGroovyAdmission() {}
+
+    /**
+     * Waits for a slot to run a script in, then starts enforcing the configured budgets.
+     * @param build the build running the script, used to pick its queue
+     */
+    @NonNull Slot admit(@CheckForNull Run<?, ?> build, @CheckForNull TaskListener listener) throws InterruptedException {
+        if (CURRENT.get() != null) {
+            return new Slot(false);
+        }
+        SystemGroovy.DescriptorImpl config = SystemGroovy.DescriptorImpl.get();
+        int max = config != null ? config.getMaxConcurrent() : 0;
+        String queue = queue(build);
+        synchronized (this) {
+            if (max <= 0 || (running < max && waiting.isEmpty())) {
+                running++;
+            } else {
+                if (listener != null) {
+                    listener.getLogger().println("Waiting for one of " + max + " slots to run a system Groovy script");
+                }
+                Ticket ticket = new Ticket(max);
+                waiting.computeIfAbsent(queue, k -> new ArrayDeque<>()).add(ticket);
+                try {
+                    while (!ticket.granted) {
+                        wait();
+                    }
+                } catch (InterruptedException x) {
+                    if (ticket.granted) {
+                        running--;
+                        grant();
+                    } else {
+                        Deque<Ticket> tickets = waiting.get(queue);
+                        tickets.remove(ticket);
+                        if (tickets.isEmpty()) {
+                            waiting.remove(queue);
+                        }
+                    }
+                    throw x;
+                }
+            }
+        }
+        Slot slot = new Slot(true);
+        CURRENT.set(slot);
+        if (config != null) {
+            slot.watch(config.getWallTimeLimit(), config.getCpuTimeLimit(), config.getAllocationLimit());
+        }
+        return slot;
+    }
+
+    private static String queue(@CheckForNull Run<?, ?> build) {
+        if (build == null) {
+            return "";
+        }
+        String fullName = build.getParent().getFullName();
+        int slash = fullName.indexOf('/');
+        return slash == -1 ? fullName : fullName.substring(0, slash);
+    }
+
+    private synchronized void release() {
+        running--;
+        grant();
+    }
+
+    /** Hands free slots to waiting queues in turn. */
+    private void grant() {
+        boolean granted = false;
+        while (!waiting.isEmpty()) {
+            Iterator<Map.Entry<String, Deque<Ticket>>> it = waiting.entrySet().iterator();
+            Map.Entry<String, Deque<Ticket>> next = it.next();
+            Ticket ticket = next.getValue().peek();
+            if (running >= ticket.max) {
+                break;
+            }
+            next.getValue().poll();
+            it.remove();
+            if (!next.getValue().isEmpty()) {
+                waiting.put(next.getKey(), next.getValue());
+            }
+            ticket.granted = true;
+            running++;
+            granted = true;
+        }
+        if (granted) {
+            notifyAll();
+        }
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public synchronized int getWaiting() {
+        int count = 0;
+        for (Deque<Ticket> tickets : waiting.values()) {
+            count += tickets.size();
+        }
+        return count;
+    }
+
+    private static final class Ticket {
+
+        /** The limit in effect when the ticket was taken. */
+        final int max;
+        boolean granted;
+
+        Ticket(int max) {
+            this.max = max;
+        }
+
+    }
+
+    /**
+     * A running script. Must be closed once the script is done.
+     */
+    final class Slot implements AutoCloseable {
+
+        private final boolean owner;
+        private final Thread thread = Thread.currentThread();
+        private ScheduledFuture<?> watchdog;
+        private volatile String exceeded;
+        private boolean closed;
+
+        Slot(boolean owner) {
+            this.owner = owner;
+        }
+
+        private void watch(long wallSeconds, long cpuSeconds, long allocationMegabytes) {
+            ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+            boolean cpu = cpuSeconds > 0 && mx.isThreadCpuTimeSupported();
+            boolean allocation = allocationMegabytes > 0 && mx instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) mx).isThreadAllocatedMemorySupported();
+            if (wallSeconds <= 0 && !cpu && !allocation) {
+                return;
+            }
+            long id = thread.getId();
+            long startWall = System.nanoTime();
+            long startCpu = cpu ? mx.getThreadCpuTime(id) : 0;
+            long startAllocation = allocation ? ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(id) : 0;
+            watchdog = Timer.get().scheduleAtFixedRate(() -> {
+                String reason = null;
+                if (wallSeconds > 0 && System.nanoTime() - startWall > TimeUnit.SECONDS.toNanos(wallSeconds)) {
+                    reason = "its wall clock time budget of " + wallSeconds + " s";
+                } else if (cpu && mx.getThreadCpuTime(id) - startCpu > TimeUnit.SECONDS.toNanos(cpuSeconds)) {
+                    reason = "its CPU time budget of " + cpuSeconds + " s";
+                } else if (allocation && ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(id) - startAllocation > allocationMegabytes * 1024 * 1024) {
+                    reason = "its allocation budget of " + allocationMegabytes + " MB";
+                }
+                synchronized (this) {
+                    if (reason != null && exceeded == null && !closed) {
+                        exceeded = reason;
+                        thread.interrupt();
+                    }
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+        }
+
+        /**
+         * Fails the build step if the script exceeded a budget, whatever it returned or threw.
+         * @param failure what the script threw, if anything
+         */
+        void check(@CheckForNull Throwable failure) throws AbortException {
+            String reason = exceeded;
+            if (reason != null) {
+                Thread.interrupted(); // ours, not from an abort
+                AbortException x = new AbortException("System Groovy script exceeded " + reason);
+                if (failure != null) {
+                    x.initCause(failure);
+                }
+                throw x;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!owner) {
+                return;
+            }
+            synchronized (this) {
+                closed = true;
+            }
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            if (exceeded != null) {
+                Thread.interrupted();
+            }
+            CURRENT.remove();
+            release();
+        }
+
+    }
+
+}
@@ -0,0 +1,39 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Offers additional variables to system Groovy scripts, see {@link SystemGroovy}.
+ * <p>Values are only computed once a script first reads the variable, so contributors may offer variables which are expensive to compute,
+ * such as changelogs or test results, without slowing down scripts which do not use them.
+ * How often each variable is offered, computed and read is shown in {@code /groovy-timings/json} along with the time spent computing it.
+ * <p>Variables set by the builder itself, such as {@code build} or those of its bindings field, take precedence over contributed ones,
+ * and among contributors the one with the highest ordinal wins.
+ */
+public abstract class SystemGroovyBindingContributor implements ExtensionPoint {
+
+    /**
+     * Names the variables offered to a script run by a build.
+     * Called before every script, so this should be cheap.
+     */
+    public abstract @NonNull Collection<String> getVariableNames(@NonNull AbstractBuild<?, ?> build);
+
+    /**
+     * Computes the value of a variable, once a script reads it.
+     * Called on the thread running the script, at most once per script and variable.
+     * @param name one of {@link #getVariableNames}
+     */
+    public abstract @CheckForNull Object getValue(@NonNull String name, @NonNull AbstractBuild<?, ?> build, @NonNull TaskListener listener) throws IOException, InterruptedException;
+
+    public static @NonNull ExtensionList<SystemGroovyBindingContributor> all() {
+        return ExtensionList.lookup(SystemGroovyBindingContributor.class);
+    }
+
+}
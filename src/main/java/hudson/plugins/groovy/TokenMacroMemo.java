@@ -0,0 +1,44 @@
+package hudson.plugins.groovy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Run;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of {@link GroovyTokenMacro} expansions with {@code memoize} set, remembered for the rest of the build.
+ * Kept apart from the macro itself since Token Macro is an optional dependency.
+ */
+final class TokenMacroMemo {
+
+    private static final Map<Run<?, ?>, Map<String, String>> RESULTS = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final AtomicLong hits = new AtomicLong();
+
+    static @CheckForNull String get(Run<?, ?> build, String script) {
+        String result;
+        synchronized (RESULTS) {
+            Map<String, String> results = RESULTS.get(build);
+            result = results != null ? results.get(script) : null;
+        }
+        if (result != null) {
+            hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    static void put(Run<?, ?> build, String script, String result) {
+        synchronized (RESULTS) {
+            RESULTS.computeIfAbsent(build, k -> new HashMap<>()).put(script, result);
+        }
+    }
+
+    static long getHits() {
+        return hits.get();
+    }
+
+    private TokenMacroMemo() {}
+
+}
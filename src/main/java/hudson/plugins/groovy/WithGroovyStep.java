@@ -10,6 +10,7 @@ import hudson.FilePath;
 import hudson.Util;
 import hudson.model.JDK;
 import hudson.model.Node;
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.remoting.Channel;
 import hudson.remoting.ClassFilter;
@@ -18,18 +19,37 @@ import hudson.remoting.VirtualChannel;
 import hudson.remoting.Which;
 import hudson.slaves.WorkspaceList;
 import hudson.util.ListBoxModel;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import jenkins.model.Jenkins;
+import jenkins.MasterToSlaveFileCallable;
 import jenkins.security.MasterToSlaveCallable;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.ivy.util.extendable.ExtendableItem;
 import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
 import org.jenkinsci.plugins.workflow.steps.EnvironmentExpander;
@@ -46,9 +66,13 @@ import org.kohsuke.stapler.DataBoundSetter;
  */
 public class WithGroovyStep extends Step {
 
+    private static final Logger LOGGER = Logger.getLogger(WithGroovyStep.class.getName());
+
     private String tool;
     private String jdk;
     private Object input;
+    private boolean records;
+    private List<String> grapes;
 
     @DataBoundConstructor
     public WithGroovyStep() {}
@@ -80,12 +104,64 @@ public class WithGroovyStep extends Step {
         this.input = input;
     }
 
+    public boolean isRecords() {
+        return records;
+    }
+
+    @DataBoundSetter
+    public void setRecords(boolean records) {
+        this.records = records;
+    }
+
+    public List<String> getGrapes() {
+        return grapes;
+    }
+
+    /**
+     * Dependencies to prefetch, as {@code group:module:version}, see {@link GrapeCache}.
+     */
+    @DataBoundSetter
+    public void setGrapes(List<String> grapes) {
+        this.grapes = grapes == null || grapes.isEmpty() ? null : new ArrayList<>(grapes);
+    }
+
     @Override
     public StepExecution start(StepContext context) throws Exception {
         return new Execution(context, this);
     }
 
-    private static class Execution extends GeneralNonBlockingStepExecution {
+    /**
+     * Looks up a Groovy installation by name and resolves it for a node.
+     */
+    static GroovyInstallation installation(String name, Node node, EnvVars env, TaskListener listener) throws IOException, InterruptedException {
+        GroovyInstallation installation = Groovy.DescriptorImpl.getGroovy(name);
+        if (installation == null) {
+            throw new AbortException("no such Groovy installation " + name);
+        }
+        installation = installation.forNode(node, listener);
+        return installation.forEnvironment(env);
+    }
+
+    /**
+     * Looks up a JDK installation by name and resolves it for a node.
+     */
+    static JDK jdk(String name, Node node, EnvVars env, TaskListener listener) throws IOException, InterruptedException {
+        // avoid calling Jenkins.getJDK: https://github.com/jenkinsci/jenkins/pull/3147
+        JDK jdk = null;
+        for (JDK _jdk : Jenkins.get().getDescriptorByType(JDK.DescriptorImpl.class).getInstallations()) {
+            if (_jdk.getName().equals(name)) {
+                jdk = _jdk;
+                break;
+            }
+        }
+        if (jdk == null) {
+            throw new AbortException("no such JDK installation " + name);
+        }
+        jdk = jdk.forNode(node, listener);
+        return jdk.forEnvironment(env);
+    }
+
+    static class Execution extends GeneralNonBlockingStepExecution {
 
         private static final long serialVersionUID = 1;
 
@@ -99,63 +175,222 @@ public class WithGroovyStep extends Step {
         @Override
         public boolean start() throws Exception {
             run(() -> {
+                PhaseTimer timer = new PhaseTimer("withGroovy");
+                timer.context(getContext().get(Run.class));
+                timer.start("prepare");
                 FilePath base = WorkspaceList.tempDir(getContext().get(FilePath.class));
-                base.mkdirs();
-                FilePath tmp = base.createTempDir("jenkins-groovy-step", "");
+                FilePath wrapper = base.child(Wrapper.NAME);
+                Wrapper.Prepared prepared = base.act(new Wrapper.Prepare(step.input != null));
+                if (prepared.missing) {
+                    base.act(new Wrapper.Install());
+                }
+                FilePath tmp = prepared.tmp != null ? base.child(prepared.tmp) : null;
                 Map<String, String> env = new HashMap<>();
+                timer.start("installation");
                 if (step.tool != null) {
-                    GroovyInstallation installation = Groovy.DescriptorImpl.getGroovy(step.tool);
-                    if (installation == null) {
-                        throw new AbortException("no such Groovy installation " + step.tool);
-                    }
-                    installation = installation.forNode(getContext().get(Node.class), getContext().get(TaskListener.class));
-                    installation = installation.forEnvironment(getContext().get(EnvVars.class));
+                    GroovyInstallation installation = installation(step.tool, getContext().get(Node.class), getContext().get(EnvVars.class), getContext().get(TaskListener.class));
                     String home = installation.getHome();
-                    env.put("PATH+GROOVY", tmp.child(home).child("bin").getRemote());
-                    env.put("GROOVY_HOME", tmp.child(home).getRemote());
+                    env.put("PATH+GROOVY", base.child(home).child("bin").getRemote());
+                    env.put("GROOVY_HOME", base.child(home).getRemote());
                 } else {
-                    FilePath bin = tmp.child("bin");
-                    FilePath groovySh = bin.child("groovy");
-                    groovySh.copyFrom(WithGroovyStep.class.getResource("groovy.sh"));
-                    groovySh.chmod(0755);
-                    bin.child("groovy.bat").copyFrom(WithGroovyStep.class.getResource("groovy.bat"));
-                    env.put("PATH+GROOVY", bin.getRemote());
-                    env.put("CLASSPATH+GROOVYALL", FindGroovyAllJAR.runIn(tmp.getChannel(), getContext().get(TaskListener.class)));
+                    env.put("PATH+GROOVY", wrapper.child("bin").getRemote());
+                    env.put("CLASSPATH+GROOVYALL", FindGroovyAllJAR.runIn(base.getChannel(), getContext().get(TaskListener.class)));
                 }
                 if (step.jdk != null) {
-                    // avoid calling Jenkins.getJDK: https://github.com/jenkinsci/jenkins/pull/3147
-                    JDK jdk = null;
-                    for (JDK _jdk : Jenkins.get().getDescriptorByType(JDK.DescriptorImpl.class).getInstallations()) {
-                        if (_jdk.getName().equals(step.jdk)) {
-                            jdk = _jdk;
-                            break;
-                        }
-                    }
-                    if (jdk == null) {
-                        throw new AbortException("no such JDK installation " + step.jdk);
-                    }
-                    jdk = jdk.forNode(getContext().get(Node.class), getContext().get(TaskListener.class));
-                    jdk = jdk.forEnvironment(getContext().get(EnvVars.class));
+                    JDK jdk = jdk(step.jdk, getContext().get(Node.class), getContext().get(EnvVars.class), getContext().get(TaskListener.class));
                     String home = jdk.getHome();
-                    env.put("PATH+JDK", tmp.child(home).child("bin").getRemote());
+                    env.put("PATH+JDK", base.child(home).child("bin").getRemote());
                 }
-                if (step.input != null) {
-                    try (OutputStream os = tmp.child("input.ser").write(); ObjectOutputStream oos = new ObjectOutputStream(os)) {
-                        oos.writeObject(step.input);
+                if (step.grapes != null) {
+                    timer.start("grapes");
+                    FilePath grapeRoot = GrapeCache.get().prefetch(step.grapes, getContext().get(Node.class), getContext().get(TaskListener.class));
+                    if (grapeRoot != null) {
+                        String javaOpts = getContext().get(EnvVars.class).get("JAVA_OPTS");
+                        env.put("JAVA_OPTS", "-Dgrape.root=" + grapeRoot.getRemote() + (javaOpts != null ? " " + javaOpts : ""));
                     }
-                    tmp.child("Pipeline.groovy").copyFrom(WithGroovyStep.class.getResource("Pipeline.groovy"));
-                    env.put("CLASSPATH+GROOVY", tmp.getRemote());
+                }
+                if (tmp != null) {
+                    timer.start("input");
+                    try {
+                        if (step.records) {
+                            try (CountingOutputStream os = new CountingOutputStream(tmp.child("input.records").write())) {
+                                writeRecords(step.input, os);
+                                timer.payload(os.getByteCount());
+                            }
+                        } else {
+                            try (CountingOutputStream os = new CountingOutputStream(tmp.child("input.ser").write()); ObjectOutputStream oos = new ObjectOutputStream(os)) {
+                                oos.writeObject(step.input);
+                                oos.flush();
+                                timer.payload(os.getByteCount());
+                            }
+                        }
+                    } catch (IOException x) {
+                        tmp.deleteRecursive();
+                        throw x;
+                    }
+                    env.put("CLASSPATH+GROOVY", wrapper.getRemote());
+                    env.put(Wrapper.STEP_DIR, tmp.getRemote());
                 }
                 getContext().newBodyInvoker().
                     withContext(EnvironmentExpander.constant(env)).
-                    withCallback(new Callback(tmp)).
+                    withCallback(new Callback(tmp, timer)).
                     start();
+                timer.start("body");
             });
             return false;
         }
 
+        /**
+         * Writes the elements of a list or the entries of a map as a stream of records, each serialized separately and preceded by its length,
+         * so that {@code Pipeline.inputRecords()} can read them one at a time.
+         * A length of -1 marks the end of the stream, to tell a complete input from a truncated one.
+         */
+        static void writeRecords(Object input, OutputStream os) throws IOException {
+            Iterable<?> records;
+            if (input instanceof Map) {
+                List<Object> entries = new ArrayList<>();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) input).entrySet()) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+                }
+                records = entries;
+            } else if (input instanceof Iterable) {
+                records = (Iterable<?>) input;
+            } else if (input instanceof Object[]) {
+                records = Arrays.asList((Object[]) input);
+            } else {
+                throw new AbortException("records: true requires the input to be a list or a map, not " + input.getClass().getName());
+            }
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os));
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            for (Object record : records) {
+                buf.reset();
+                try (ObjectOutputStream oos = new ObjectOutputStream(buf)) {
+                    oos.writeObject(record);
+                }
+                dos.writeInt(buf.size());
+                buf.writeTo(dos);
+            }
+            dos.writeInt(-1);
+            dos.flush();
+        }
+
+        /**
+         * Files shared by all invocations on a given agent, namely the {@code groovy} wrappers and {@code Pipeline.groovy}.
+         * They are kept in a directory named after a digest of their contents,
+         * so a plugin update simply switches to a new directory.
+         */
+        static final class Wrapper {
+
+            /** Tells {@code Pipeline.groovy} where to find {@code input.ser} or {@code input.records} and put {@code output.ser}. */
+            static final String STEP_DIR = "JENKINS_GROOVY_STEP_DIR";
+
+            private static final String[] FILES = {"groovy.sh", "groovy.bat", "Pipeline.groovy"};
+            private static final String[] TARGETS = {"bin/groovy", "bin/groovy.bat", "Pipeline.groovy"};
+            private static final byte[][] CONTENTS = new byte[FILES.length][];
+            static final String NAME;
+
+            static {
+                StringBuilder all = new StringBuilder();
+                for (int i = 0; i < FILES.length; i++) {
+                    try (InputStream is = WithGroovyStep.class.getResourceAsStream(FILES[i])) {
+                        CONTENTS[i] = is.readAllBytes();
+                    } catch (IOException x) {
+                        throw new ExceptionInInitializerError(x);
+                    }
+                    all.append(FILES[i]).append('\n').append(new String(CONTENTS[i], StandardCharsets.UTF_8)).append('\n');
+                }
+                NAME = "groovy-wrapper-" + AbstractGroovy.digest(all.toString()).substring(0, 16);
+            }
+
+            /** The outcome of {@link Prepare}. */
+            static final class Prepared implements Serializable {
+
+                private static final long serialVersionUID = 1;
+
+                /** The per-invocation directory, relative to the base directory, if requested. */
+                final @CheckForNull String tmp;
+                /** Whether the shared directory still needs to be {@linkplain Install installed}. */
+                final boolean missing;
+
+                Prepared(@CheckForNull String tmp, boolean missing) {
+                    this.tmp = tmp;
+                    this.missing = missing;
+                }
+
+            }
+
+            /**
+             * Checks whether the shared directory exists, and optionally creates a per-invocation directory next to it,
+             * in a single remote call which does not carry the contents of the shared files.
+             */
+            static final class Prepare extends MasterToSlaveFileCallable<Prepared> {
+
+                private static final long serialVersionUID = 1;
+
+                private final String name = NAME;
+                private final boolean perCall;
+
+                Prepare(boolean perCall) {
+                    this.perCall = perCall;
+                }
+
+                @Override
+                public Prepared invoke(File base, VirtualChannel channel) throws IOException, InterruptedException {
+                    Files.createDirectories(base.toPath());
+                    boolean missing = !Files.isDirectory(base.toPath().resolve(name));
+                    return new Prepared(perCall ? Files.createTempDirectory(base.toPath(), "jenkins-groovy-step").getFileName().toString() : null, missing);
+                }
+
+            }
+
+            /**
+             * Materializes the shared directory unless it already exists, once {@link Prepare} found it missing.
+             * It is populated under a temporary name and then renamed,
+             * so concurrent builds never see it half written.
+             */
+            static final class Install extends MasterToSlaveFileCallable<Void> {
+
+                private static final long serialVersionUID = 1;
+
+                private final String[] targets = TARGETS;
+                private final byte[][] contents = CONTENTS;
+                private final String name = NAME;
+
+                @Override
+                public Void invoke(File base, VirtualChannel channel) throws IOException, InterruptedException {
+                    Path dir = base.toPath().resolve(name);
+                    if (!Files.isDirectory(dir)) {
+                        Path staging = Files.createTempDirectory(base.toPath(), name + "-");
+                        try {
+                            for (int i = 0; i < targets.length; i++) {
+                                Path target = staging.resolve(targets[i]);
+                                Files.createDirectories(target.getParent());
+                                Files.write(target, contents[i]);
+                            }
+                            staging.resolve(targets[0]).toFile().setExecutable(true, false);
+                            Files.move(staging, dir, StandardCopyOption.ATOMIC_MOVE);
+                        } catch (IOException x) {
+                            if (!Files.isDirectory(dir)) {
+                                throw x;
+                            }
+                            // somebody else got there first
+                        } finally {
+                            if (Files.exists(staging)) {
+                                Util.deleteRecursive(staging.toFile());
+                            }
+                        }
+                    }
+                    return null;
+                }
+
+            }
+
+            private Wrapper() {}
+
+        }
+
         /** Locates {@code groovy-all.jar} on a given node. */
-        private static class FindGroovyAllJAR extends MasterToSlaveCallable<String, IOException> {
+        static class FindGroovyAllJAR extends MasterToSlaveCallable<String, IOException> {
 
             private static @CheckForNull Class<?> anIvyClass(@CheckForNull TaskListener listener) {
                 try {
@@ -168,15 +403,32 @@ public class WithGroovyStep extends Step {
                 }
             }
 
+            /** Results by agent connection; entries are dropped once the channel is closed. */
+            private static final Map<VirtualChannel, String> CLASSPATHS = Collections.synchronizedMap(new WeakHashMap<>());
+
             static String runIn(VirtualChannel channel, TaskListener listener) throws IOException, InterruptedException {
                 Class<?> ivy = anIvyClass(listener);
+                String classpath = CLASSPATHS.get(channel);
+                if (classpath != null) {
+                    return classpath;
+                }
                 // Without the preloadJar call, we would not get back a JAR path, but just a directory containing only groovy/lang/Writable.class.
                 if (channel instanceof Channel) {
                     Class<?> groovy = Writable.class; // arbitrary, but has no other deps to load from agent JVM
                     Class<?>[] classesInJar = ivy != null ? new Class<?>[] {groovy, ivy} : new Class<?>[] {groovy};
                     ((Channel) channel).preloadJar(WithGroovyStep.class.getClassLoader(), classesInJar);
                 }
-                return channel.call(new FindGroovyAllJAR());
+                classpath = channel.call(new FindGroovyAllJAR());
+                CLASSPATHS.put(channel, classpath);
+                if (channel instanceof Channel) {
+                    ((Channel) channel).addListener(new Channel.Listener() {
+                        @Override
+                        public void onClosed(Channel c, IOException cause) {
+                            CLASSPATHS.remove(c);
+                        }
+                    });
+                }
+                return classpath;
             }
 
             @Override
@@ -191,34 +443,78 @@ public class WithGroovyStep extends Step {
 
             private static final long serialVersionUID = 1;
 
-            private final String tmp;
+            /** The per-invocation directory, if any. */
+            private final @CheckForNull String tmp;
+            /** Not kept across restarts. */
+            private final transient PhaseTimer timer;
 
-            Callback(FilePath tmp) {
-                this.tmp = tmp.getRemote();
+            Callback(@CheckForNull FilePath tmp, PhaseTimer timer) {
+                this.tmp = tmp != null ? tmp.getRemote() : null;
+                this.timer = timer;
             }
 
             @Override
             public void onSuccess(final StepContext context, final Object result) {
                 run(() -> {
+                    Object output = result;
                     try {
-                        FilePath ser = context.get(FilePath.class).child(tmp).child("output.ser");
-                        if (ser.exists()) {
-                            try (InputStream is = ser.read(); ObjectInputStream ois = new ObjectInputStreamEx(is, GroovyObject.class.getClassLoader(), ClassFilter.DEFAULT)) {
-                                context.onSuccess(ois.readObject());
-                                return;
+                        if (timer != null) {
+                            timer.start("output");
+                        }
+                        if (tmp != null) {
+                            FilePath ser = context.get(FilePath.class).child(tmp).child("output.ser");
+                            if (ser.exists()) {
+                                try (CountingInputStream is = new CountingInputStream(ser.read()); ObjectInputStream ois = new ObjectInputStreamEx(is, GroovyObject.class.getClassLoader(), ClassFilter.DEFAULT)) {
+                                    output = ois.readObject();
+                                    if (timer != null) {
+                                        timer.payload(is.getByteCount());
+                                    }
+                                }
                             }
                         }
                     } catch (Throwable x) {
+                        cleanUp(context);
                         context.onFailure(x);
                         return;
                     }
-                    context.onSuccess(result);
+                    cleanUp(context);
+                    record(context);
+                    context.onSuccess(output);
                 });
             }
 
             @Override
             public void onFailure(StepContext context, Throwable t) {
-                context.onFailure(t);
+                if (tmp == null) {
+                    context.onFailure(t);
+                    return;
+                }
+                run(() -> {
+                    cleanUp(context);
+                    context.onFailure(t);
+                });
+            }
+
+            private void record(StepContext context) {
+                if (timer == null) {
+                    return;
+                }
+                try {
+                    timer.record(context.get(Run.class), context.get(TaskListener.class));
+                } catch (Exception x) {
+                    LOGGER.log(Level.FINE, null, x);
+                }
+            }
+
+            private void cleanUp(StepContext context) {
+                if (tmp == null) {
+                    return;
+                }
+                try {
+                    context.get(FilePath.class).child(tmp).deleteRecursive();
+                } catch (Exception x) {
+                    LOGGER.log(Level.WARNING, "failed to delete " + tmp, x);
+                }
             }
 
         }
@@ -0,0 +1,234 @@
+import org.codehaus.groovy.runtime.InvokerHelper
+import org.codehaus.groovy.runtime.StackTraceUtils
+
+/**
+ * Runs scripts sent by {@code GroovyDaemon} over standard input, one at a time, each in a fresh class loader,
+ * with the environment of the build sending it bound to {@code env}.
+ * Script output is sent back over standard output as length-prefixed frames, followed by a frame with the exit code.
+ * Expressions sent by {@code groovyEval} are compiled once and kept, and their value is sent back serialized after the exit code.
+ */
+class DaemonWorker {
+
+    static final int MAGIC = 0x47524F4F
+    static final int ACK = -2
+    static final int DONE = -1
+    static final int REQUEST_RUN = 1
+    static final int REQUEST_EVAL = 2
+    static final int MAX_EXPRESSIONS = 100
+
+    /** Compiled expressions by text, least recently used first. */
+    private static final Map<String, Expression> EXPRESSIONS = new LinkedHashMap<>(16, 0.75f, true)
+
+    static void main(String[] ignored) {
+        DataOutputStream control = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)))
+        PrintStream frames = new PrintStream(new Frames(control), true)
+        System.setOut(frames)
+        System.setErr(frames)
+        DataInputStream requests = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)))
+        synchronized (control) {
+            control.writeInt(MAGIC)
+            control.flush()
+        }
+        while (true) {
+            int type
+            try {
+                type = requests.readInt()
+            } catch (EOFException x) {
+                return
+            }
+            if (type == REQUEST_EVAL) {
+                String expression = readString(requests)
+                byte[] input = new byte[requests.readInt()]
+                requests.readFully(input)
+                synchronized (control) {
+                    control.writeInt(ACK)
+                    control.flush()
+                }
+                byte[] value = null
+                int code = 0
+                try {
+                    value = eval(expression, input)
+                } catch (Throwable t) {
+                    System.err.println("Caught: " + t)
+                    StackTraceUtils.deepSanitize(t).printStackTrace()
+                    code = 1
+                }
+                frames.flush()
+                synchronized (control) {
+                    control.writeInt(DONE)
+                    control.writeInt(code)
+                    control.writeInt(heap())
+                    if (value != null) {
+                        control.writeInt(value.length)
+                        control.write(value)
+                    } else {
+                        control.writeInt(-1)
+                    }
+                    control.flush()
+                }
+                continue
+            }
+            if (type != REQUEST_RUN) {
+                throw new IllegalStateException("unknown request " + type)
+            }
+            String script = readString(requests)
+            String[] args = new String[requests.readInt()]
+            for (int i = 0; i < args.length; i++) {
+                args[i] = readString(requests)
+            }
+            Map<String, String> env = new LinkedHashMap<>()
+            int vars = requests.readInt()
+            for (int i = 0; i < vars; i++) {
+                env.put(readString(requests), readString(requests))
+            }
+            synchronized (control) {
+                control.writeInt(ACK)
+                control.flush()
+            }
+            int code = run(script, args, env)
+            frames.flush()
+            synchronized (control) {
+                control.writeInt(DONE)
+                control.writeInt(code)
+                control.writeInt(heap())
+                control.flush()
+            }
+        }
+    }
+
+    private static int heap() {
+        Runtime rt = Runtime.getRuntime()
+        return (int) ((rt.totalMemory() - rt.freeMemory()) * 100 / rt.maxMemory())
+    }
+
+    /**
+     * Evaluates an expression with {@code input} bound to the deserialized input, and serializes its value.
+     */
+    private static byte[] eval(String expression, byte[] input) {
+        Expression compiled = EXPRESSIONS.get(expression)
+        if (compiled == null) {
+            compiled = new Expression(expression)
+            EXPRESSIONS.put(expression, compiled)
+            if (EXPRESSIONS.size() > MAX_EXPRESSIONS) {
+                EXPRESSIONS.remove(EXPRESSIONS.keySet().iterator().next()).close()
+            }
+        }
+        Class type = compiled.type
+        Binding binding = new Binding()
+        new ObjectInputStream(new ByteArrayInputStream(input)).withCloseable { binding.setVariable("input", it.readObject()) }
+        Thread thread = Thread.currentThread()
+        ClassLoader contextLoader = thread.getContextClassLoader()
+        thread.setContextClassLoader(type.classLoader)
+        try {
+            Object value = InvokerHelper.createScript(type, binding).run()
+            ByteArrayOutputStream buf = new ByteArrayOutputStream()
+            new ObjectOutputStream(buf).withCloseable { it.writeObject(value) }
+            return buf.toByteArray()
+        } finally {
+            thread.setContextClassLoader(contextLoader)
+        }
+    }
+
+    private static int run(String script, String[] args, Map<String, String> env) {
+        Properties properties = (Properties) System.getProperties().clone()
+        GroovyClassLoader loader = new GroovyClassLoader(DaemonWorker.class.getClassLoader())
+        Thread thread = Thread.currentThread()
+        ClassLoader contextLoader = thread.getContextClassLoader()
+        thread.setContextClassLoader(loader)
+        Binding binding = new Binding(args)
+        binding.setVariable("env", Collections.unmodifiableMap(env))
+        GroovyShell shell = new GroovyShell(loader, binding)
+        try {
+            shell.run(new File(script), args)
+            return 0
+        } catch (Throwable t) {
+            // like GroovyMain
+            System.err.println("Caught: " + t)
+            StackTraceUtils.deepSanitize(t).printStackTrace()
+            return 1
+        } finally {
+            thread.setContextClassLoader(contextLoader)
+            System.setProperties(properties)
+            // the Groovy runtime would otherwise keep the classes of every script run
+            for (GroovyClassLoader l : [shell.classLoader, loader]) {
+                for (Class c : l.loadedClasses) {
+                    InvokerHelper.removeClass(c)
+                }
+                l.clearCache()
+            }
+            loader.close()
+        }
+    }
+
+    /**
+     * An expression compiled in its own class loader, so that once dropped from the cache its classes can be unloaded.
+     */
+    private static class Expression {
+
+        private static int compiled
+
+        final GroovyClassLoader loader = new GroovyClassLoader(DaemonWorker.class.getClassLoader())
+        Class type
+
+        Expression(String text) {
+            try {
+                type = loader.parseClass(new GroovyCodeSource(text, "Expression" + (++compiled) + ".groovy", "/groovy/shell"), false)
+            } catch (Throwable t) {
+                close()
+                throw t
+            }
+        }
+
+        /**
+         * Unregisters its classes from the Groovy runtime, which would otherwise keep them, and closes its loader.
+         */
+        void close() {
+            for (Class c : loader.loadedClasses) {
+                InvokerHelper.removeClass(c)
+            }
+            loader.clearCache()
+            loader.close()
+        }
+
+    }
+
+    private static String readString(DataInputStream input) {
+        byte[] bytes = new byte[input.readInt()]
+        input.readFully(bytes)
+        return new String(bytes, 'UTF-8')
+    }
+
+    private static class Frames extends OutputStream {
+
+        private final DataOutputStream control
+
+        Frames(DataOutputStream control) {
+            this.control = control
+        }
+
+        @Override
+        void write(int b) {
+            write([(byte) b] as byte[], 0, 1)
+        }
+
+        @Override
+        void write(byte[] b, int off, int len) {
+            if (len == 0) {
+                return
+            }
+            synchronized (control) {
+                control.writeInt(len)
+                control.write(b, off, len)
+            }
+        }
+
+        @Override
+        void flush() {
+            synchronized (control) {
+                control.flush()
+            }
+        }
+
+    }
+
+}
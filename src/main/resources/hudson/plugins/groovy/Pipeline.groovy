@@ -1,11 +1,60 @@
 public class Pipeline {
     public static Object input() {
-        f('input.ser').withObjectInputStream {it.readObject()}
+        File ser = f('input.ser')
+        if (!ser.exists() && f('input.records').exists()) {
+            return inputRecords().collect()
+        }
+        ser.withObjectInputStream {it.readObject()}
+    }
+    /**
+     * Reads the input one record at a time, when the step was called with {@code records: true}.
+     * Lists yield their elements and maps yield {@link Map.Entry}s.
+     */
+    public static Iterator<Object> inputRecords() {
+        new Records(new DataInputStream(new BufferedInputStream(new FileInputStream(f('input.records')))))
     }
     public static void output(Object o) {
         f('output.ser').withObjectOutputStream {it.writeObject(o)}
     }
-    /** Locates a sibling of {@code Pipeline.groovy} inside the {@code jenkins-groovy-stepXXX} temp dir. */
-    private static File f(String name) {new File(new File(Pipeline.class.getResource('/Pipeline.groovy').toURI()).parent, name)}
+    /** Locates a file inside the {@code jenkins-groovy-stepXXX} temp dir, or failing that a sibling of {@code Pipeline.groovy}. */
+    private static File f(String name) {
+        String dir = System.getenv('JENKINS_GROOVY_STEP_DIR')
+        dir ? new File(dir, name) : new File(new File(Pipeline.class.getResource('/Pipeline.groovy').toURI()).parent, name)
+    }
     private Pipeline() {}
+
+    /** Iterates over length-prefixed serialized records, ending with a length of -1. */
+    private static class Records implements Iterator<Object>, Closeable {
+        private final DataInputStream is
+        private int length
+        Records(DataInputStream is) {
+            this.is = is
+            advance()
+        }
+        private void advance() {
+            length = is.readInt()
+            if (length < 0) {
+                close()
+            }
+        }
+        boolean hasNext() {
+            length >= 0
+        }
+        Object next() {
+            if (length < 0) {
+                throw new NoSuchElementException()
+            }
+            byte[] record = new byte[length]
+            is.readFully(record)
+            Object o = new ObjectInputStream(new ByteArrayInputStream(record)).readObject()
+            advance()
+            o
+        }
+        void remove() {
+            throw new UnsupportedOperationException()
+        }
+        void close() {
+            is.close()
+        }
+    }
 }
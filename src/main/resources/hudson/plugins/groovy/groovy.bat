@@ -1 +1 @@
-java groovy.ui.GroovyMain %*
+java %JAVA_OPTS% groovy.ui.GroovyMain %*
@@ -1 +1 @@
-exec java groovy.ui.GroovyMain "$@"
+exec java $JAVA_OPTS groovy.ui.GroovyMain "$@"
@@ -0,0 +1,64 @@
+package hudson.plugins.groovy;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.slaves.DumbSlave;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class AgentGroovyTest {
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+    }
+
+    @Test
+    void runsInAgentJvm() throws Exception {
+        DumbSlave s = j.createOnlineSlave();
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.setAssignedNode(s);
+        AgentGroovy groovy = new AgentGroovy(new StringScriptSource("println(/${greeting} ${args[0]} from build ${env.BUILD_NUMBER}/)"));
+        groovy.setScriptParameters("there");
+        groovy.setBindings("greeting=hello");
+        p.getBuildersList().add(groovy);
+        j.assertLogContains("hello there from build 1", j.buildAndAssertSuccess(p));
+        j.assertLogContains("hello there from build 2", j.buildAndAssertSuccess(p));
+    }
+
+    @Test
+    void failingScript() throws Exception {
+        DumbSlave s = j.createOnlineSlave();
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.setAssignedNode(s);
+        p.getBuildersList().add(new AgentGroovy(new StringScriptSource("throw new IllegalStateException('oops')")));
+        j.assertLogContains("java.lang.IllegalStateException: oops", j.buildAndAssertStatus(Result.FAILURE, p));
+    }
+
+    @Test
+    void refusedOnBuiltInNode() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new AgentGroovy(new StringScriptSource("println 'never'")));
+        FreeStyleBuild b = j.buildAndAssertStatus(Result.FAILURE, p);
+        j.assertLogContains("cannot run in the agent JVM on the built-in node", b);
+        j.assertLogNotContains("never", b);
+    }
+
+    @Test
+    void configRoundtrip() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        AgentGroovy before = new AgentGroovy(new StringScriptSource("println 'a'"));
+        before.setScriptParameters("x y");
+        before.setBindings("a=b");
+        p.getBuildersList().add(before);
+        j.configRoundtrip(p);
+        j.assertEqualDataBoundBeans(before, p.getBuildersList().get(AgentGroovy.class));
+    }
+
+}
@@ -0,0 +1,93 @@
+package hudson.plugins.groovy;
+
+import hudson.FilePath;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@WithJenkins
+class BuildAvoidanceTest {
+
+    private static final String SCRIPT = "new File('out').mkdirs(); new File('out/gen.txt').text = new File('in.txt').text.toUpperCase(); println 'generated'";
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) throws Exception {
+        j = rule;
+        TestGroovy.install(j);
+    }
+
+    private FreeStyleProject project(String scriptParameters) throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        Groovy groovy = new Groovy(new StringScriptSource(SCRIPT), "2.4.x", null, scriptParameters, null, null, null);
+        groovy.setSkipUnchanged(true);
+        groovy.setInputs("in.txt");
+        groovy.setOutputs("out/**");
+        p.getBuildersList().add(groovy);
+        return p;
+    }
+
+    @Test
+    void skippedWhileUnchanged() throws Exception {
+        TestGroovy.assumeJavaHome();
+        FreeStyleProject p = project(null);
+        FilePath ws = j.jenkins.getWorkspaceFor(p);
+        ws.child("in.txt").write("hello", "UTF-8");
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("generated", b);
+        ws.child("out/gen.txt").delete();
+        b = j.buildAndAssertSuccess(p);
+        j.assertLogNotContains("generated", b);
+        j.assertLogContains("Inputs unchanged", b);
+        assertEquals("HELLO", ws.child("out/gen.txt").readToString());
+        ws.child("in.txt").write("bye", "UTF-8");
+        b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("generated", b);
+        assertEquals("BYE", ws.child("out/gen.txt").readToString());
+        FilePath cache = j.jenkins.getRootPath().child(BuildAvoidance.DIRECTORY);
+        assertEquals(1, cache.listDirectories().size());
+        assertEquals(1, cache.listDirectories().get(0).listDirectories().size());
+    }
+
+    @Test
+    void buildersKeepOwnOutputs() throws Exception {
+        TestGroovy.assumeJavaHome();
+        FreeStyleProject p = project("first");
+        Groovy other = new Groovy(new StringScriptSource(SCRIPT.replace("gen.txt", "other.txt")), "2.4.x", null, null, null, null, null);
+        other.setSkipUnchanged(true);
+        other.setInputs("in.txt");
+        other.setOutputs("out/**");
+        p.getBuildersList().add(other);
+        FilePath ws = j.jenkins.getWorkspaceFor(p);
+        ws.child("in.txt").write("hello", "UTF-8");
+        j.assertLogContains("generated", j.buildAndAssertSuccess(p));
+        ws.child("out").deleteRecursive();
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        j.assertLogNotContains("generated", b);
+        assertEquals(2, b.getLog(100).stream().filter(l -> l.startsWith("Inputs unchanged")).count());
+        assertEquals("HELLO", ws.child("out/gen.txt").readToString());
+        assertEquals("HELLO", ws.child("out/other.txt").readToString());
+        assertEquals(2, j.jenkins.getRootPath().child(BuildAvoidance.DIRECTORY).listDirectories().size());
+    }
+
+    @Test
+    void changedCommandLineRuns() throws Exception {
+        TestGroovy.assumeJavaHome();
+        FreeStyleProject p = project("first");
+        j.jenkins.getWorkspaceFor(p).child("in.txt").write("hello", "UTF-8");
+        j.assertLogContains("generated", j.buildAndAssertSuccess(p));
+        Groovy changed = new Groovy(new StringScriptSource(SCRIPT), "2.4.x", null, "second", null, null, null);
+        changed.setSkipUnchanged(true);
+        changed.setInputs("in.txt");
+        changed.setOutputs("out/**");
+        p.getBuildersList().replace(changed);
+        j.assertLogContains("generated", j.buildAndAssertSuccess(p));
+    }
+
+}
@@ -0,0 +1,56 @@
+package hudson.plugins.groovy;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.slaves.EnvironmentVariablesNodeProperty;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@WithJenkins
+class ClassDataSharingTest {
+
+    private JenkinsRule j;
+    private GroovyInstallation installation;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) throws Exception {
+        j = rule;
+        installation = TestGroovy.install(j);
+        installation.setCds(true);
+        j.jenkins.getGlobalNodeProperties().add(new EnvironmentVariablesNodeProperty(new EnvironmentVariablesNodeProperty.Entry("JAVA_HOME", System.getProperty("java.home"))));
+    }
+
+    @Test
+    void archiveCreatedThenUsed() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        Groovy groovy = new Groovy(new StringScriptSource("println(/opts: ${System.getenv('JAVA_OPTS')}/)"), "2.4.x", null, null, null, null, null);
+        groovy.setLaunchProfile(Groovy.LaunchProfile.FAST_START);
+        p.getBuildersList().add(groovy);
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("-XX:ArchiveClassesAtExit=", b);
+        j.assertLogContains("-XX:TieredStopAtLevel=1", b);
+        j.assertLogContains("Created class data sharing archive", b);
+        assertEquals(1, j.jenkins.getRootPath().child(ClassDataSharing.DIRECTORY).list("*.jsa").length);
+        b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("-XX:SharedArchiveFile=", b);
+        j.assertLogNotContains("Created class data sharing archive", b);
+    }
+
+    @Test
+    void configRoundtrip() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        Groovy before = new Groovy(new StringScriptSource("println 'a'"), "2.4.x", null, null, null, null, null);
+        before.setLaunchProfile(Groovy.LaunchProfile.SMALL_HEAP);
+        p.getBuildersList().add(before);
+        j.configRoundtrip(p);
+        j.assertEqualDataBoundBeans(before, p.getBuildersList().get(Groovy.class));
+        j.jenkins.getDescriptorByType(GroovyInstallation.DescriptorImpl.class).setInstallations(installation);
+        j.configRoundtrip();
+        assertEquals(true, j.jenkins.getDescriptorByType(GroovyInstallation.DescriptorImpl.class).getInstallations()[0].isCds());
+    }
+
+}
@@ -1,6 +1,5 @@
 package hudson.plugins.groovy;
 
-import hudson.FilePath;
 import hudson.model.FreeStyleProject;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -22,9 +21,7 @@ class ClassPathTest {
     void setUp(JenkinsRule rule) throws Exception {
         j = rule;
 
-        FilePath home = j.jenkins.getRootPath();
-        home.unzipFrom(ClassPathTest.class.getResourceAsStream("/groovy-binary-2.4.21.zip"));
-        j.jenkins.getDescriptorByType(GroovyInstallation.DescriptorImpl.class).setInstallations(new GroovyInstallation("2.4.x", home.child("groovy-2.4.21").getRemote(), null));
+        TestGroovy.install(j);
     }
 
     /**
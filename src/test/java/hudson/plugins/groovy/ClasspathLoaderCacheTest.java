@@ -0,0 +1,96 @@
+package hudson.plugins.groovy;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClasspathLoaderCacheTest {
+
+    @TempDir
+    File tmp;
+
+    private final ClasspathLoaderCache cache = ClasspathLoaderCache.get();
+    private final ClassLoader parent = ClassLoader.getPlatformClassLoader();
+
+    @AfterEach
+    void tearDown() {
+        cache.clear();
+    }
+
+    /** Loaded from the jar, as the platform class loader cannot see it. */
+    public static final class Payload {}
+
+    private static void writeJar(File jar, String extra) throws Exception {
+        try (OutputStream os = Files.newOutputStream(jar.toPath()); JarOutputStream jos = new JarOutputStream(os)) {
+            String name = Payload.class.getName().replace('.', '/') + ".class";
+            jos.putNextEntry(new JarEntry(name));
+            try (InputStream is = ClasspathLoaderCacheTest.class.getClassLoader().getResourceAsStream(name)) {
+                is.transferTo(jos);
+            }
+            jos.putNextEntry(new JarEntry("extra.txt"));
+            jos.write(extra.getBytes());
+        }
+    }
+
+    @Test
+    void sharedUntilJarChanges() throws Exception {
+        File jar = new File(tmp, "lib.jar");
+        writeJar(jar, "one");
+        List<URL> urls = List.of(jar.toURI().toURL());
+        ClasspathLoaderCache.Loader first = cache.acquire(urls, parent);
+        first.getClassLoader().loadClass(Payload.class.getName());
+        assertEquals(1, first.getClassCount());
+        ClasspathLoaderCache.Loader second = cache.acquire(urls, parent);
+        assertSame(first, second);
+        assertEquals(2, second.getUsers());
+        cache.release(second);
+
+        // touched but identical
+        assertTrue(jar.setLastModified(jar.lastModified() - 10_000));
+        assertTrue(cache.isCurrent(first));
+        assertSame(first, cache.acquire(urls, parent));
+        cache.release(first);
+
+        writeJar(jar, "two, longer");
+        assertFalse(cache.isCurrent(first));
+        ClasspathLoaderCache.Loader third = cache.acquire(urls, parent);
+        assertNotSame(first, third);
+        assertEquals(0, third.getClassCount());
+        assertEquals(1, cache.getLoaders().size());
+        cache.release(first);
+        cache.release(third);
+    }
+
+    @Test
+    void idleLoadersBounded() throws Exception {
+        int maxIdle = ClasspathLoaderCache.MAX_IDLE;
+        ClasspathLoaderCache.MAX_IDLE = 1;
+        try {
+            ClasspathLoaderCache.Loader loader = null;
+            for (int i = 0; i < 3; i++) {
+                File jar = new File(tmp, "lib" + i + ".jar");
+                writeJar(jar, "" + i);
+                loader = cache.acquire(List.of(jar.toURI().toURL()), parent);
+                cache.release(loader);
+            }
+            assertEquals(List.of(loader), cache.getLoaders());
+        } finally {
+            ClasspathLoaderCache.MAX_IDLE = maxIdle;
+        }
+    }
+
+}
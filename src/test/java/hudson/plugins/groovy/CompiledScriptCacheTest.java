@@ -0,0 +1,92 @@
+package hudson.plugins.groovy;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.SecureGroovyScript;
+import org.jenkinsci.plugins.scriptsecurity.scripts.ApprovalContext;
+import org.jenkinsci.plugins.scriptsecurity.scripts.ScriptApproval;
+import org.jenkinsci.plugins.scriptsecurity.scripts.UnapprovedUsageException;
+import org.jenkinsci.plugins.scriptsecurity.scripts.languages.GroovyLanguage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@WithJenkins
+class CompiledScriptCacheTest {
+
+    private JenkinsRule j;
+    private CompiledScriptCache cache;
+    private int maxEntries;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+        cache = CompiledScriptCache.get();
+        cache.clear();
+        maxEntries = CompiledScriptCache.MAX_ENTRIES;
+    }
+
+    @AfterEach
+    void tearDown() {
+        CompiledScriptCache.MAX_ENTRIES = maxEntries;
+    }
+
+    @Test
+    void reusedAcrossBuilds() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new SystemGroovy(new StringSystemScriptSource(new SecureGroovyScript("def x = 'cached'; true", true, null))));
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+        j.buildAndAssertSuccess(p);
+        j.buildAndAssertSuccess(p);
+        assertEquals(misses + 1, cache.getMisses());
+        assertEquals(hits + 1, cache.getHits());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    void compileEachRun() throws Exception {
+        String script = "class Counter {static int runs}; Counter.runs++; println(/runs: ${Counter.runs}/); true";
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new SystemGroovy(new StringSystemScriptSource(new SecureGroovyScript(script, false, null).configuring(ApprovalContext.create()))));
+        ScriptApproval.get().preapprove(script, GroovyLanguage.get());
+        j.assertLogContains("runs: 1", j.buildAndAssertSuccess(p));
+        j.assertLogContains("runs: 2", j.buildAndAssertSuccess(p));
+        SystemGroovy fresh = new SystemGroovy(new StringSystemScriptSource(new SecureGroovyScript(script, false, null).configuring(ApprovalContext.create())));
+        fresh.setCompileEachRun(true);
+        p.getBuildersList().replace(fresh);
+        long misses = cache.getMisses();
+        j.assertLogContains("runs: 1", j.buildAndAssertSuccess(p));
+        j.assertLogContains("runs: 1", j.buildAndAssertSuccess(p));
+        assertEquals(misses, cache.getMisses());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws Exception {
+        CompiledScriptCache.MAX_ENTRIES = 1;
+        long evictions = cache.getEvictions();
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new SystemGroovy(new StringSystemScriptSource(new SecureGroovyScript("def x = 1; true", true, null))));
+        p.getBuildersList().add(new SystemGroovy(new StringSystemScriptSource(new SecureGroovyScript("def x = 2; true", true, null))));
+        j.buildAndAssertSuccess(p);
+        assertEquals(1, cache.getSize());
+        assertEquals(evictions + 1, cache.getEvictions());
+    }
+
+    @Test
+    void approvalCheckedOnEveryRun() throws Exception {
+        String script = "jenkins.model.Jenkins.instance.systemMessage = 'from cache'; true";
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new SystemGroovy(new StringSystemScriptSource(new SecureGroovyScript(script, false, null).configuring(ApprovalContext.create()))));
+        ScriptApproval.get().preapprove(script, GroovyLanguage.get());
+        j.buildAndAssertSuccess(p);
+        assertEquals("from cache", j.jenkins.getSystemMessage());
+        ScriptApproval.get().clearApprovedScripts();
+        j.assertLogContains(UnapprovedUsageException.class.getName(), j.buildAndAssertStatus(Result.FAILURE, p));
+    }
+
+}
@@ -0,0 +1,65 @@
+package hudson.plugins.groovy;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.slaves.DumbSlave;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+@DisabledOnOs(value = OS.WINDOWS, disabledReason = "checks for the Unix launcher script")
+class DistributionCacheTest {
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+    }
+
+    /** Stands in for the Groovy website with a distribution from the test resources. */
+    static final class LocalInstaller extends GroovyInstaller {
+
+        LocalInstaller() {
+            super("2.4.21");
+        }
+
+        @Override
+        public Installable getInstallable() {
+            Installable inst = new Installable();
+            inst.id = "2.4.21";
+            inst.name = "Groovy 2.4.21";
+            inst.url = DistributionCacheTest.class.getResource("/groovy-binary-2.4.21.zip").toString();
+            return inst;
+        }
+
+    }
+
+    @Test
+    void downloadedOnceForAllAgents() throws Exception {
+        j.jenkins.getDescriptorByType(Groovy.DescriptorImpl.class).setDistributionCache(true);
+        GroovyInstallation installation = new GroovyInstallation("2.4.x", null, null);
+        LocalInstaller installer = new LocalInstaller();
+        long downloads = DistributionCache.get().getDownloads();
+        for (int i = 0; i < 2; i++) {
+            DumbSlave s = j.createOnlineSlave();
+            FilePath home = installer.performInstallation(installation, s, TaskListener.NULL);
+            assertTrue(home.child("bin/groovy").exists());
+            assertTrue((home.child("bin/groovy").mode() & 0100) != 0, "executable");
+            assertEquals(installer.getInstallable().url, home.child(".installedFrom").readToString());
+            // up to date, so not unpacked again
+            home.child("marker").write("", "UTF-8");
+            installer.performInstallation(installation, s, TaskListener.NULL);
+            assertTrue(home.child("marker").exists());
+        }
+        assertEquals(downloads + 1, DistributionCache.get().getDownloads());
+    }
+
+}
@@ -1,5 +1,6 @@
 package hudson.plugins.groovy;
 
+import hudson.FilePath;
 import hudson.model.FreeStyleProject;
 import org.jenkinsci.plugins.scriptsecurity.scripts.ScriptApproval;
 import org.junit.jupiter.api.BeforeEach;
@@ -26,4 +27,17 @@ class FileSystemScriptSourceTest {
         j.assertLogContains("ran OK", j.buildAndAssertSuccess(p));
     }
 
+    @Test
+    void reloadsChangedScript() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("p");
+        ScriptApproval.get().approveSignature("method java.io.PrintStream println java.lang.String");
+        FilePath script = j.jenkins.getWorkspaceFor(p).child("x.groovy");
+        script.write("out.println('first version')", null);
+        p.getBuildersList().add(new SystemGroovy(new FileSystemScriptSource("x.groovy")));
+        j.assertLogContains("first version", j.buildAndAssertSuccess(p));
+        j.assertLogContains("first version", j.buildAndAssertSuccess(p));
+        script.write("out.println('second version')", null);
+        j.assertLogContains("second version", j.buildAndAssertSuccess(p));
+    }
+
 }
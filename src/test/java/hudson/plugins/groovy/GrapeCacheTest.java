@@ -0,0 +1,127 @@
+package hudson.plugins.groovy;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import hudson.slaves.DumbSlave;
+import hudson.util.StreamTaskListener;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+class GrapeCacheTest {
+
+    @TempDir
+    File tmp;
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) throws Exception {
+        j = rule;
+        TestGroovy.install(j);
+        // an offline stand-in for Maven Central
+        File repo = new File(tmp, "repo");
+        File dir = new File(repo, "com/example/hello/1.0");
+        Files.createDirectories(dir.toPath());
+        try (OutputStream os = Files.newOutputStream(new File(dir, "hello-1.0.jar").toPath()); JarOutputStream jos = new JarOutputStream(os)) {
+            jos.putNextEntry(new JarEntry("hello.txt"));
+            jos.write("hello from the repository".getBytes(StandardCharsets.UTF_8));
+        }
+        Files.writeString(new File(dir, "hello-1.0.pom").toPath(),
+                "<project><modelVersion>4.0.0</modelVersion><groupId>com.example</groupId><artifactId>hello</artifactId><version>1.0</version></project>");
+        dir = new File(repo, "com/example/other/1.0");
+        Files.createDirectories(dir.toPath());
+        try (OutputStream os = Files.newOutputStream(new File(dir, "other-1.0.jar").toPath()); JarOutputStream jos = new JarOutputStream(os)) {
+            jos.putNextEntry(new JarEntry("other.txt"));
+        }
+        Files.writeString(new File(dir, "other-1.0.pom").toPath(),
+                "<project><modelVersion>4.0.0</modelVersion><groupId>com.example</groupId><artifactId>other</artifactId><version>1.0</version></project>");
+        File config = new File(tmp, "grapeConfig.xml");
+        Files.writeString(config.toPath(),
+                "<ivysettings><settings defaultResolver='downloadGrapes'/><resolvers><chain name='downloadGrapes'>"
+                + "<ibiblio name='local' root='" + repo.toURI() + "' m2compatible='true'/>"
+                + "</chain></resolvers></ivysettings>");
+        GrapeCache.CONFIG = config.getPath();
+    }
+
+    @AfterEach
+    void tearDown() {
+        GrapeCache.CONFIG = null;
+    }
+
+    @Test
+    void parse() {
+        assertEquals(List.of("a:b:1", "c:d:2:jdk8", "g:m:v') ; evil"), GrapeCache.parse("# trusted\na:b:1\n\n  c:d:2:jdk8  \r\ng:m:v') ; evil\n"));
+        assertTrue(GrapeCache.isCoordinate("a:b:1"));
+        assertTrue(GrapeCache.isCoordinate("c:d:2:jdk8"));
+        assertFalse(GrapeCache.isCoordinate("g:m:v') ; evil"));
+        assertFalse(GrapeCache.isCoordinate("a:b"));
+        j.jenkins.getDescriptorByType(Groovy.DescriptorImpl.class).setPrefetchedGrapes("a:b:1\ng:m:v') ; evil");
+        assertEquals(List.of("a:b:1"), GrapeCache.allowed());
+    }
+
+    @Test
+    void onlyAllowed() throws Exception {
+        j.jenkins.getDescriptorByType(Groovy.DescriptorImpl.class).setPrefetchedGrapes("com.example:hello:1.0");
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        assertNull(GrapeCache.get().prefetch(List.of("com.example:other:1.0"), j.jenkins, new StreamTaskListener(log, StandardCharsets.UTF_8)));
+        assertTrue(log.toString(StandardCharsets.UTF_8).contains("Not prefetching com.example:other:1.0"), log.toString(StandardCharsets.UTF_8));
+        assertFalse(j.jenkins.getRootPath().child(GrapeCache.DIRECTORY + "/grapes/com.example/other").exists());
+    }
+
+    @Test
+    void prefetchedToAgent() throws Exception {
+        TestGroovy.assumeJavaHome();
+        Groovy.DescriptorImpl descriptor = j.jenkins.getDescriptorByType(Groovy.DescriptorImpl.class);
+        descriptor.setPrefetchedGrapes("com.example:other:1.0");
+        assertNotNull(GrapeCache.get().prefetch(List.of("com.example:other:1.0"), j.jenkins, TaskListener.NULL));
+        descriptor.setPrefetchedGrapes("# resolved on the controller\ncom.example:hello:1.0");
+        DumbSlave s = j.createOnlineSlave();
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.setAssignedNode(s);
+        Groovy groovy = new Groovy(new StringScriptSource("@Grab('com.example:hello:1.0') import java.lang.Object\nprintln getClass().classLoader.getResource('hello.txt').text"),
+                "2.4.x", null, null, null, null, null);
+        groovy.setPrefetchGrapes(true);
+        p.getBuildersList().add(groovy);
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("Resolving @Grab dependencies on the controller", b);
+        j.assertLogContains("hello from the repository", b);
+        assertTrue(s.getRootPath().child(GrapeCache.DIRECTORY + "/grapes/com.example/hello/jars/hello-1.0.jar").exists());
+        assertTrue(s.getRootPath().child(GrapeCache.DIRECTORY + "/grapes/com.example/hello/ivy-1.0.xml").exists());
+        assertFalse(s.getRootPath().child(GrapeCache.DIRECTORY + "/grapes/com.example/other").exists(), "only the dependencies currently allowed");
+        b = j.buildAndAssertSuccess(p);
+        j.assertLogNotContains("Resolving @Grab dependencies on the controller", b);
+    }
+
+    @Test
+    void nothingAllowed() throws Exception {
+        TestGroovy.assumeJavaHome();
+        FreeStyleProject p = j.createFreeStyleProject();
+        Groovy groovy = new Groovy(new StringScriptSource("println 'hi'"), "2.4.x", null, null, null, null, null);
+        groovy.setPrefetchGrapes(true);
+        p.getBuildersList().add(groovy);
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("No @Grab dependencies to prefetch are listed in the global configuration", b);
+        j.assertLogNotContains("Resolving @Grab dependencies on the controller", b);
+    }
+
+}
@@ -0,0 +1,72 @@
+package hudson.plugins.groovy;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersAction;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Result;
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+@DisabledOnOs(value = OS.WINDOWS, disabledReason = "uses the Unix launcher script of the Groovy distribution")
+class GroovyDaemonTest {
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) throws Exception {
+        j = rule;
+
+        TestGroovy.install(j);
+    }
+
+    @Test
+    void reusesWorker() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(daemon("println(/got ${args[0]}/)", "$BUILD_NUMBER"));
+        FreeStyleBuild b1 = j.buildAndAssertSuccess(p);
+        j.assertLogContains("Starting Groovy daemon", b1);
+        j.assertLogContains("got 1", b1);
+        FreeStyleBuild b2 = j.buildAndAssertSuccess(p);
+        j.assertLogNotContains("Starting Groovy daemon", b2);
+        j.assertLogContains("got 2", b2);
+    }
+
+    @Test
+    void environmentOfEachBuild() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("WHO", "")));
+        p.getBuildersList().add(daemon("println(/hello ${env.WHO} from ${env.BUILD_NUMBER}, process sees ${System.getenv('WHO')}/)", ""));
+        FreeStyleBuild b1 = j.assertBuildStatusSuccess(p.scheduleBuild2(0, new ParametersAction(new StringParameterValue("WHO", "alice"))));
+        j.assertLogContains("Starting Groovy daemon", b1);
+        j.assertLogContains("hello alice from 1, process sees null", b1);
+        FreeStyleBuild b2 = j.assertBuildStatusSuccess(p.scheduleBuild2(0, new ParametersAction(new StringParameterValue("WHO", "bob"))));
+        j.assertLogNotContains("Starting Groovy daemon", b2);
+        j.assertLogContains("hello bob from 2, process sees null", b2);
+    }
+
+    @Test
+    void failuresAndExit() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(daemon("throw new Exception('oops')", ""));
+        j.assertLogContains("Caught: java.lang.Exception: oops", j.buildAndAssertStatus(Result.FAILURE, p));
+        p.getBuildersList().replace(daemon("System.exit(23)", ""));
+        j.buildAndAssertStatus(Result.FAILURE, p);
+        p.getBuildersList().replace(daemon("println 'still works'", ""));
+        j.assertLogContains("still works", j.buildAndAssertSuccess(p));
+    }
+
+    private static Groovy daemon(String script, String scriptParameters) {
+        Groovy g = new Groovy(new StringScriptSource(script), "2.4.x", "", scriptParameters, "", "", "");
+        g.setDaemon(true);
+        return g;
+    }
+
+}
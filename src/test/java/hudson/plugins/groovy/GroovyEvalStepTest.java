@@ -0,0 +1,89 @@
+package hudson.plugins.groovy;
+
+import hudson.model.Result;
+import hudson.slaves.DumbSlave;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.steps.StepConfigTester;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@WithJenkins
+class GroovyEvalStepTest {
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+    }
+
+    @Test
+    void configRoundtrip() throws Exception {
+        StepConfigTester tester = new StepConfigTester(j);
+        GroovyEvalStep step = new GroovyEvalStep("input * 2");
+        j.assertEqualDataBoundBeans(step, tester.configRoundTrip(step));
+    }
+
+    @Test
+    void returnsValue() throws Exception {
+        DumbSlave s = j.createOnlineSlave();
+        WorkflowJob p = j.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("node('" + s.getNodeName() + "') {for (int i = 0; i < 2; i++) {"
+                + "def r = groovyEval(script: 'println(/evaluating/); input.collect {k, v -> k * v}', input: [once: 1, twice: 2]); echo(/got ${r.join('/')}/)}}", true));
+        WorkflowRun b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("got once/twicetwice", b);
+        j.assertLogContains("evaluating", b);
+        // the second call reuses the worker started by the first
+        j.assertLogContains("Starting Groovy daemon", b);
+        String log = JenkinsRule.getLog(b);
+        assertEquals(log.indexOf("Starting Groovy daemon"), log.lastIndexOf("Starting Groovy daemon"), log);
+        j.assertLogNotContains("Starting Groovy daemon", j.buildAndAssertSuccess(p));
+    }
+
+    @Test
+    void environmentNotShared() throws Exception {
+        DumbSlave s = j.createOnlineSlave();
+        WorkflowJob first = j.createProject(WorkflowJob.class, "first");
+        first.setDefinition(new CpsFlowDefinition("node('" + s.getNodeName() + "') {withEnv(['SECRET=s3cr3t']) {"
+                + "echo(/first sees ${groovyEval('System.getenv(\"SECRET\") + \' \' + System.getenv(\"JOB_NAME\")')}/)}}", true));
+        WorkflowRun b = j.buildAndAssertSuccess(first);
+        j.assertLogContains("first sees null null", b);
+        j.assertLogContains("Starting Groovy daemon", b);
+        WorkflowJob second = j.createProject(WorkflowJob.class, "second");
+        second.setDefinition(new CpsFlowDefinition("node('" + s.getNodeName() + "') {"
+                + "echo(/second sees ${groovyEval('System.getenv(\"SECRET\") + \' \' + System.getenv(\"JOB_NAME\")')}/)}", true));
+        b = j.buildAndAssertSuccess(second);
+        j.assertLogContains("second sees null null", b);
+        j.assertLogNotContains("s3cr3t", b);
+        // served by the worker the first job started
+        j.assertLogNotContains("Starting Groovy daemon", b);
+    }
+
+    @Test
+    void failures() throws Exception {
+        WorkflowJob p = j.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("node {try {groovyEval 'throw new Exception(\"oops\")'} catch (e) {echo(/caught: $e/)}; echo(/then ${groovyEval('6 * 7')}/)}", true));
+        WorkflowRun b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("Caught: java.lang.Exception: oops", b);
+        j.assertLogContains("caught: hudson.AbortException: groovyEval failed with exit code 1", b);
+        j.assertLogContains("then 42", b);
+        p.setDefinition(new CpsFlowDefinition("node {groovyEval 'new Object()'}", true));
+        j.assertLogContains("java.io.NotSerializableException: java.lang.Object", j.buildAndAssertStatus(Result.FAILURE, p));
+    }
+
+    @Test
+    void tool() throws Exception {
+        TestGroovy.assumeJavaHome();
+        TestGroovy.install(j);
+        WorkflowJob p = j.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("node {echo(/running ${groovyEval(script: 'GroovySystem.version', tool: '2.4.x')}/)}", true));
+        j.assertLogContains("running 2.4.21", j.buildAndAssertSuccess(p));
+    }
+
+}
@@ -72,6 +72,19 @@ class GroovyTokenMacroTest {
         j.buildAndAssertSuccess(p);
     }
 
+    @Test
+    void memoize() throws Exception {
+        allowTokenMacro();
+        String macro = "${GROOVY,script = \"return 6 * 7\", memoize = true}";
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new MacroTestBuilder("42", macro));
+        p.getBuildersList().add(new MacroTestBuilder("42", macro));
+        long hits = TokenMacroMemo.getHits();
+
+        j.buildAndAssertSuccess(p);
+        assertEquals(hits + 1, TokenMacroMemo.getHits());
+    }
+
     @Test
     void ignoreExpansionWhenNotAllowed() throws Exception {
         FreeStyleProject p = j.createFreeStyleProject();
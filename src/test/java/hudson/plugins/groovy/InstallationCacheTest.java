@@ -0,0 +1,68 @@
+package hudson.plugins.groovy;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.slaves.DumbSlave;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@WithJenkins
+@DisabledOnOs(value = OS.WINDOWS, disabledReason = "checks for the Unix launcher script")
+class InstallationCacheTest {
+
+    private JenkinsRule j;
+    private long validationInterval;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+        validationInterval = InstallationCache.VALIDATION_INTERVAL;
+    }
+
+    @AfterEach
+    void tearDown() {
+        InstallationCache.VALIDATION_INTERVAL = validationInterval;
+    }
+
+    @Test
+    void executableRecheckedAfterInterval() throws Exception {
+        DumbSlave s = j.createOnlineSlave();
+        FilePath home = TestGroovy.unpack(s.getRootPath());
+        GroovyInstallation installation = new GroovyInstallation("2.4.x", home.getRemote(), null);
+        j.jenkins.getDescriptorByType(GroovyInstallation.DescriptorImpl.class).setInstallations(installation);
+
+        String exe = installation.forNode(s, TaskListener.NULL).getExecutable(s.getChannel());
+        assertNotNull(exe);
+        home.child("bin/groovy").delete();
+        assertEquals(exe, installation.forNode(s, TaskListener.NULL).getExecutable(s.getChannel()), "cached");
+        InstallationCache.VALIDATION_INTERVAL = 0;
+        assertNull(installation.forNode(s, TaskListener.NULL).getExecutable(s.getChannel()), "rechecked");
+    }
+
+    @Test
+    void homeDroppedWhenExecutableDisappears() throws Exception {
+        DumbSlave s = j.createOnlineSlave();
+        TestGroovy.unpack(s.getRootPath());
+        GroovyInstallation installation = new GroovyInstallation("2.4.x", "${GROOVY_ROOT}/groovy-2.4.21", null);
+        j.jenkins.getDescriptorByType(GroovyInstallation.DescriptorImpl.class).setInstallations(installation);
+        EnvVars env = new EnvVars("GROOVY_ROOT", s.getRootPath().getRemote());
+
+        assertNotNull(installation.forNode(s, TaskListener.NULL).forEnvironment(env).getExecutable(s.getChannel()));
+        assertNotNull(InstallationCache.getHome(installation, s));
+        s.getRootPath().child("groovy-2.4.21/bin/groovy").delete();
+        InstallationCache.VALIDATION_INTERVAL = 0;
+        assertNull(installation.forNode(s, TaskListener.NULL).forEnvironment(env).getExecutable(s.getChannel()));
+        assertNull(InstallationCache.getHome(installation, s), "resolved again by the next build");
+    }
+
+}
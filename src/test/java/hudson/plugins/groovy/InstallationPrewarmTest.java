@@ -0,0 +1,60 @@
+package hudson.plugins.groovy;
+
+import hudson.FilePath;
+import hudson.slaves.DumbSlave;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+@DisabledOnOs(value = OS.WINDOWS, disabledReason = "checks for the Unix launcher script")
+class InstallationPrewarmTest {
+
+    @TempDir
+    File tmp;
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+    }
+
+    @Test
+    void preparedWhenAgentConnects() throws Exception {
+        FilePath dir = new FilePath(tmp);
+        FilePath home = TestGroovy.unpack(dir);
+        home.child("bin/groovy").chmod(0755);
+        GroovyInstallation installation = new GroovyInstallation("2.4.x", home.getRemote(), null);
+        j.jenkins.getDescriptorByType(GroovyInstallation.DescriptorImpl.class).setInstallations(installation);
+        Groovy.DescriptorImpl config = j.jenkins.getDescriptorByType(Groovy.DescriptorImpl.class);
+        config.setPrewarm(true);
+        config.setPrewarmVersion(true);
+
+        DumbSlave s = j.createOnlineSlave();
+        List<InstallationPrewarm.Status> statuses;
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        do {
+            assertTrue(System.nanoTime() < deadline, "installations still not prepared");
+            Thread.sleep(100);
+            statuses = InstallationPrewarm.getStatuses(s.getNodeName());
+        } while (statuses.isEmpty() || statuses.get(0).getState().equals("pending"));
+        InstallationPrewarm.Status status = statuses.get(0);
+        assertEquals("ready", status.getState(), status.getError());
+        assertTrue(status.getVersion().contains("2.4.21"), status.getVersion());
+        assertNotNull(InstallationCache.getHome(installation, s));
+        j.createWebClient().goTo("computer/" + s.getNodeName() + "/groovy-installations/");
+    }
+
+}
@@ -0,0 +1,63 @@
+package hudson.plugins.groovy;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+
+@WithJenkins
+class ParallelGroovyTest {
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) throws Exception {
+        j = rule;
+        TestGroovy.install(j);
+    }
+
+    @Test
+    void runsAllScripts() throws Exception {
+        TestGroovy.assumeJavaHome();
+        FreeStyleProject p = j.createFreeStyleProject();
+        ParallelGroovy builder = new ParallelGroovy(List.of(new StringScriptSource("println 'first'"), new StringScriptSource("println(/second: ${args[0]}/)")));
+        builder.setGroovyName("2.4.x");
+        builder.setScriptParameters("arg");
+        builder.setConcurrency(2);
+        p.getBuildersList().add(builder);
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("[#1] first", b);
+        j.assertLogContains("[#2] second: arg", b);
+        j.assertLogContains("Parallel Groovy timings: prepare ", b);
+    }
+
+    @Test
+    void failsIfAnyScriptFails() throws Exception {
+        TestGroovy.assumeJavaHome();
+        FreeStyleProject p = j.createFreeStyleProject();
+        ParallelGroovy builder = new ParallelGroovy(List.of(new StringScriptSource("println 'fine'"), new StringScriptSource("System.exit(3)")));
+        builder.setGroovyName("2.4.x");
+        p.getBuildersList().add(builder);
+        FreeStyleBuild b = j.buildAndAssertStatus(Result.FAILURE, p);
+        j.assertLogContains("[#1] fine", b);
+        j.assertLogContains("[#2] failed with exit code 3", b);
+    }
+
+    @Test
+    void configRoundtrip() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        ParallelGroovy before = new ParallelGroovy(List.of(new StringScriptSource("println 'a'"), new FileScriptSource("b.groovy")));
+        before.setGroovyName("2.4.x");
+        before.setConcurrency(3);
+        before.setJavaOpts("-Xmx64m");
+        p.getBuildersList().add(before);
+        j.configRoundtrip(p);
+        j.assertEqualDataBoundBeans(before, p.getBuildersList().get(ParallelGroovy.class));
+    }
+
+}
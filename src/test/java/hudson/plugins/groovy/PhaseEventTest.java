@@ -0,0 +1,57 @@
+package hudson.plugins.groovy;
+
+import hudson.model.FreeStyleProject;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.SecureGroovyScript;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@WithJenkins
+class PhaseEventTest {
+
+    private JenkinsRule j;
+
+    @TempDir
+    private Path tmp;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+    }
+
+    @Test
+    void systemGroovy() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("p");
+        p.getBuildersList().add(new SystemGroovy(new StringSystemScriptSource(new SecureGroovyScript("true", true, null))));
+        Path file = tmp.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PhaseEvent.class);
+            recording.start();
+            j.buildAndAssertSuccess(p);
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().equals("hudson.plugins.groovy.Phase"))
+                .collect(Collectors.toList());
+        assertEquals("[script, admission, compile, execution]", events.stream().map(e -> e.getString("phase")).collect(Collectors.toList()).toString());
+        RecordedEvent execution = events.get(3);
+        assertEquals("System Groovy", execution.getString("step"));
+        assertEquals("p", execution.getString("job"));
+        assertEquals(1, execution.getInt("build"));
+        assertEquals(AbstractGroovy.digest("true"), execution.getString("scriptDigest"));
+        assertEquals(4, execution.getLong("scriptSize"));
+    }
+
+}
@@ -0,0 +1,51 @@
+package hudson.plugins.groovy;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.SecureGroovyScript;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockAuthorizationStrategy;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@WithJenkins
+class PhaseStatisticsTest {
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+        PhaseStatistics.get().clear();
+    }
+
+    @Test
+    void systemGroovy() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("p");
+        p.getBuildersList().add(new SystemGroovy(new StringSystemScriptSource(new SecureGroovyScript("true", true, null))));
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("System Groovy timings: script ", b);
+        GroovyTimings timings = b.getAction(GroovyTimings.class);
+        assertNotNull(timings);
+        assertEquals(1, timings.getSteps().size());
+        assertEquals("[script, admission, compile, execution]", timings.getSteps().get(0).getPhases().keySet().toString());
+
+        j.jenkins.setSecurityRealm(j.createDummySecurityRealm());
+        j.jenkins.setAuthorizationStrategy(new MockAuthorizationStrategy().
+            grant(Jenkins.ADMINISTER).everywhere().to("admin").
+            grant(Jenkins.READ).everywhere().to("dev"));
+        JenkinsRule.WebClient wc = j.createWebClient();
+        wc.assertFails("groovy-timings/json", 403);
+        JSONObject json = JSONObject.fromObject(wc.login("admin").goTo("groovy-timings/json", "application/json").getWebResponse().getContentAsString());
+        JSONObject total = json.getJSONObject("steps").getJSONObject("System Groovy").getJSONObject("total");
+        assertEquals(1, total.getInt("count"));
+        assertEquals("p", json.getJSONArray("slowest").getJSONObject(0).getString("job"));
+    }
+
+}
@@ -0,0 +1,72 @@
+package hudson.plugins.groovy;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@WithJenkins
+class PrecompiledScriptsTest {
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) throws Exception {
+        j = rule;
+        TestGroovy.install(j);
+    }
+
+    private FreeStyleProject project(String script) throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        Groovy groovy = new Groovy(new StringScriptSource(script), "2.4.x", null, "arg", "greeting=hello", null, null);
+        groovy.setPrecompile(true);
+        p.getBuildersList().add(groovy);
+        return p;
+    }
+
+    @Test
+    void compiledOnce() throws Exception {
+        TestGroovy.assumeJavaHome();
+        FreeStyleProject p = project("println(/${System.getProperty('greeting')} ${args[0]} from ${getClass().name}/)");
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("Compiling ", b);
+        j.assertLogContains("hello arg from " + PrecompiledScripts.INLINE_CLASS, b);
+        b = j.buildAndAssertSuccess(p);
+        j.assertLogNotContains("Compiling ", b);
+        j.assertLogContains("hello arg from " + PrecompiledScripts.INLINE_CLASS, b);
+        assertEquals(1, j.jenkins.getRootPath().child(PrecompiledScripts.DIRECTORY).listDirectories().size());
+    }
+
+    @Test
+    void compilationErrorReported() throws Exception {
+        TestGroovy.assumeJavaHome();
+        FreeStyleBuild b = j.buildAndAssertStatus(Result.FAILURE, project("class {"));
+        j.assertLogContains("Compilation of ", b);
+    }
+
+    @Test
+    void pruned() throws Exception {
+        TestGroovy.assumeJavaHome();
+        long maxSize = PrecompiledScripts.MAX_SIZE;
+        PrecompiledScripts.MAX_SIZE = 0;
+        try {
+            j.buildAndAssertSuccess(project("println 'one'"));
+            j.buildAndAssertSuccess(project("println 'two'"));
+            assertEquals(1, j.jenkins.getRootPath().child(PrecompiledScripts.DIRECTORY).listDirectories().size());
+        } finally {
+            PrecompiledScripts.MAX_SIZE = maxSize;
+        }
+    }
+
+    @Test
+    void className() {
+        assertEquals("my_script", Groovy.className("my-script"));
+        assertEquals("_1st", Groovy.className("1st"));
+    }
+
+}
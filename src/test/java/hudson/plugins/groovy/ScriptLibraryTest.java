@@ -0,0 +1,65 @@
+package hudson.plugins.groovy;
+
+import hudson.FilePath;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.slaves.DumbSlave;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.SecureGroovyScript;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+class ScriptLibraryTest {
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) throws Exception {
+        j = rule;
+        ScriptLibrary.get().setScripts(Arrays.asList(
+                new LibraryScript("greet", "1", new SecureGroovyScript("println 'hello from 1'", true, null)),
+                new LibraryScript("greet", "2", new SecureGroovyScript("println 'hello from 2'", true, null))));
+    }
+
+    @Test
+    void groovy() throws Exception {
+        TestGroovy.assumeJavaHome();
+        TestGroovy.install(j);
+        DumbSlave s = j.createOnlineSlave();
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.setAssignedNode(s);
+        p.getBuildersList().add(new Groovy(new LibraryScriptSource("greet", "1"), "2.4.x", "", "", "", "", ""));
+        j.assertLogContains("hello from 1", j.buildAndAssertSuccess(p));
+        LibraryScript script = ScriptLibrary.get().getScript("greet", "1");
+        FilePath cached = s.getRootPath().child(LibraryScriptSource.DIRECTORY).child(script.getDigest()).child("greet.groovy");
+        assertTrue(cached.exists());
+        // an altered copy is replaced rather than run
+        cached.write("println 'hello from the cache'", "UTF-8");
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("hello from 1", b);
+        j.assertLogNotContains("hello from the cache", b);
+        assertEquals(script.getScript().getScript(), cached.readToString());
+        p.getBuildersList().replace(new Groovy(new LibraryScriptSource("greet", ""), "2.4.x", "", "", "", "", ""));
+        j.assertLogContains("hello from 2", j.buildAndAssertSuccess(p));
+    }
+
+    @Test
+    void systemGroovy() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new SystemGroovy(new LibrarySystemScriptSource("greet", "1")));
+        j.assertLogContains("hello from 1", j.buildAndAssertSuccess(p));
+        p.getBuildersList().replace(new SystemGroovy(new LibrarySystemScriptSource("greet", null)));
+        j.assertLogContains("hello from 2", j.buildAndAssertSuccess(p));
+        p.getBuildersList().replace(new SystemGroovy(new LibrarySystemScriptSource("greet", "3")));
+        j.assertLogContains("No script greet version 3 in the Groovy script library", j.buildAndAssertStatus(Result.FAILURE, p));
+    }
+
+}
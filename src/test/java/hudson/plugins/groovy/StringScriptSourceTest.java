@@ -24,6 +24,9 @@
 
 package hudson.plugins.groovy;
 
+import hudson.Functions;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
 import hudson.util.FormValidation;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -35,6 +38,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
 
 @WithJenkins
 class StringScriptSourceTest {
@@ -84,4 +88,20 @@ class StringScriptSourceTest {
                 """).kind, equalTo(FormValidation.Kind.OK)); // Compilation ends before the constructor is invoked.
         assertNull(j.jenkins.getItem("should-not-exist"));
     }
+
+    @Test
+    void stdin() throws Exception {
+        assumeFalse(Functions.isWindows(), "scripts are only piped in on Unix");
+        TestGroovy.install(j);
+        FreeStyleProject p = j.createFreeStyleProject();
+        StringScriptSource source = new StringScriptSource("println(/piped: ${args.join(',')}/)");
+        source.setStdin(true);
+        p.getBuildersList().add(new Groovy(source, "2.4.x", "", "one two", "", "", ""));
+        j.assertLogContains("piped: one,two", j.buildAndAssertSuccess(p));
+        assertThat(p.getSomeWorkspace().list("hudson*.groovy").length, equalTo(0));
+        StringScriptSource exit = new StringScriptSource("System.exit(3)");
+        exit.setStdin(true);
+        p.getBuildersList().replace(new Groovy(exit, "2.4.x", "", "", "", "", ""));
+        j.buildAndAssertStatus(Result.FAILURE, p);
+    }
 }
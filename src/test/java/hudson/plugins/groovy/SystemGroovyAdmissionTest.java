@@ -0,0 +1,64 @@
+package hudson.plugins.groovy;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.SecureGroovyScript;
+import org.jenkinsci.plugins.scriptsecurity.scripts.ScriptApproval;
+import org.jenkinsci.plugins.scriptsecurity.scripts.languages.GroovyLanguage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@WithJenkins
+class SystemGroovyAdmissionTest {
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+    }
+
+    private void configure(int maxConcurrent, long wallTimeLimit) throws Exception {
+        j.jenkins.getDescriptorByType(SystemGroovy.DescriptorImpl.class).configure(null, new JSONObject()
+                .element("maxConcurrent", maxConcurrent).element("wallTimeLimit", wallTimeLimit));
+    }
+
+    private FreeStyleProject project(String name, String script) throws Exception {
+        ScriptApproval.get().preapprove(script, GroovyLanguage.get());
+        FreeStyleProject p = j.createFreeStyleProject(name);
+        p.getBuildersList().add(new SystemGroovy(new StringSystemScriptSource(new SecureGroovyScript(script, false, null))));
+        return p;
+    }
+
+    @Test
+    void wallTimeBudget() throws Exception {
+        configure(0, 1);
+        FreeStyleProject p = project("slow", "Thread.sleep(60000)");
+        FreeStyleBuild b = j.buildAndAssertStatus(Result.FAILURE, p);
+        j.assertLogContains("System Groovy script exceeded its wall clock time budget of 1 s", b);
+        assertEquals(0, SystemGroovyAdmission.get().getRunning());
+    }
+
+    @Test
+    void concurrencyCap() throws Exception {
+        configure(1, 0);
+        FreeStyleProject p1 = project("p1", "Thread.sleep(3000); true");
+        FreeStyleProject p2 = project("p2", "Thread.sleep(3000) /* second */; true");
+        Future<FreeStyleBuild> f1 = p1.scheduleBuild2(0);
+        Future<FreeStyleBuild> f2 = p2.scheduleBuild2(0);
+        FreeStyleBuild b1 = j.assertBuildStatusSuccess(f1);
+        FreeStyleBuild b2 = j.assertBuildStatusSuccess(f2);
+        String waited = "Waiting for one of 1 slots to run a system Groovy script";
+        assertEquals(1, (JenkinsRule.getLog(b1).contains(waited) ? 1 : 0) + (JenkinsRule.getLog(b2).contains(waited) ? 1 : 0));
+        assertEquals(0, SystemGroovyAdmission.get().getRunning());
+    }
+
+}
@@ -0,0 +1,81 @@
+package hudson.plugins.groovy;
+
+import hudson.model.AbstractBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.SecureGroovyScript;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@WithJenkins
+class SystemGroovyBindingContributorTest {
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        j = rule;
+        PhaseStatistics.get().clear();
+        Contributor.computed.clear();
+    }
+
+    @Test
+    void lazy() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("p");
+        p.getBuildersList().add(new SystemGroovy(new StringSystemScriptSource(new SecureGroovyScript("println(/got $cheap and $cheap/)", true, null))));
+        j.assertLogContains("got cheap #1 and cheap #1", j.buildAndAssertSuccess(p));
+        assertEquals(List.of("cheap"), Contributor.computed);
+        JSONObject bindings = PhaseStatistics.get().toJSON().getJSONObject("bindings");
+        JSONObject cheap = bindings.getJSONObject("cheap");
+        assertEquals(Contributor.class.getName(), cheap.getString("contributor"));
+        assertEquals(1, cheap.getInt("offered"));
+        assertEquals(1, cheap.getInt("computed"));
+        assertEquals(2, cheap.getInt("accesses"));
+        JSONObject expensive = bindings.getJSONObject("expensive");
+        assertEquals(1, expensive.getInt("offered"));
+        assertEquals(0, expensive.getInt("computed"));
+        assertEquals(0, expensive.getInt("accesses"));
+    }
+
+    @Test
+    void builderVariablesWin() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("p");
+        SystemGroovy builder = new SystemGroovy(new StringSystemScriptSource(new SecureGroovyScript("println(/got $cheap/)", true, null)));
+        builder.setBindings("cheap=mine");
+        p.getBuildersList().add(builder);
+        j.assertLogContains("got mine", j.buildAndAssertSuccess(p));
+        assertEquals(List.of(), Contributor.computed);
+        assertFalse(PhaseStatistics.get().toJSON().getJSONObject("bindings").has("cheap"));
+    }
+
+    @TestExtension
+    public static final class Contributor extends SystemGroovyBindingContributor {
+
+        static final List<String> computed = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Collection<String> getVariableNames(AbstractBuild<?, ?> build) {
+            return Arrays.asList("cheap", "expensive");
+        }
+
+        @Override
+        public Object getValue(String name, AbstractBuild<?, ?> build, TaskListener listener) {
+            computed.add(name);
+            return name + " #" + build.getNumber();
+        }
+
+    }
+
+}
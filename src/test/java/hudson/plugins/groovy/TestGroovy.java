@@ -0,0 +1,40 @@
+package hudson.plugins.groovy;
+
+import hudson.FilePath;
+import hudson.Functions;
+import java.io.IOException;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * The Groovy 2.4.21 distribution bundled with the tests.
+ */
+final class TestGroovy {
+
+    /** Unpacks the distribution into a directory, returning its home. */
+    static FilePath unpack(FilePath dir) throws IOException, InterruptedException {
+        dir.unzipFrom(TestGroovy.class.getResourceAsStream("/groovy-binary-2.4.21.zip"));
+        return dir.child("groovy-2.4.21");
+    }
+
+    /** Unpacks the distribution into the Jenkins root directory and makes it the only Groovy installation, named {@code 2.4.x}. */
+    static GroovyInstallation install(JenkinsRule j) throws IOException, InterruptedException {
+        return install(j, j.jenkins.getRootPath());
+    }
+
+    /** Unpacks the distribution into a directory and makes it the only Groovy installation, named {@code 2.4.x}. */
+    static GroovyInstallation install(JenkinsRule j, FilePath dir) throws IOException, InterruptedException {
+        GroovyInstallation installation = new GroovyInstallation("2.4.x", unpack(dir).getRemote(), null);
+        j.jenkins.getDescriptorByType(GroovyInstallation.DescriptorImpl.class).setInstallations(installation);
+        return installation;
+    }
+
+    /** For tests running the launcher script of the distribution with the {@code JAVA_HOME} the tests were started with. */
+    static void assumeJavaHome() {
+        assumeFalse(Functions.isWindows(), "TODO fails on Windows CI: JAVA_HOME is set to an invalid directory: C:/tools/jdk-8");
+    }
+
+    private TestGroovy() {}
+
+}
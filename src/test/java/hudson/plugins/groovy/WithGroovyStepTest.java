@@ -11,8 +11,10 @@ import hudson.model.JDK;
 import hudson.model.Result;
 import hudson.plugins.sshslaves.SSHLauncher;
 import hudson.slaves.DumbSlave;
+import hudson.slaves.WorkspaceList;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.steps.StepConfigTester;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -22,7 +24,10 @@ import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.images.builder.ImageFromDockerfile;
 
 import java.util.Collections;
+import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assumptions.assumeFalse;
 
 @WithJenkins
@@ -70,6 +75,31 @@ class WithGroovyStepTest {
         j.assertLogContains("once/twicetwice/thricethricethrice", j.buildAndAssertSuccess(p));
     }
 
+    @Test
+    void records() throws Exception {
+        WorkflowJob p = j.createProject(WorkflowJob.class, "p");
+        j.jenkins.getWorkspaceFor(p).child("calc.groovy").write("def r = []; for (def it = Pipeline.inputRecords(); it.hasNext();) {def e = it.next(); r << e.key * e.value}; Pipeline.output(r)", null);
+        p.setDefinition(new CpsFlowDefinition("node {def r = withGroovy(input: [once: 1, twice: 2, thrice: 3], records: true) {if (isUnix()) {sh 'groovy calc.groovy'} else {bat 'groovy calc.groovy'}}; echo r.join('/')}", true));
+        j.assertLogContains("once/twicetwice/thricethricethrice", j.buildAndAssertSuccess(p));
+        j.jenkins.getWorkspaceFor(p).child("sum.groovy").write("Pipeline.output(Pipeline.input().sum())", null);
+        p.setDefinition(new CpsFlowDefinition("node {echo(/sum: ${withGroovy(input: [1, 2, 3, 4], records: true) {if (isUnix()) {sh 'groovy sum.groovy'} else {bat 'groovy sum.groovy'}}}/)}", true));
+        j.assertLogContains("sum: 10", j.buildAndAssertSuccess(p));
+    }
+
+    @Test
+    void tempDirReused() throws Exception {
+        WorkflowJob p = j.createProject(WorkflowJob.class, "p");
+        FilePath ws = j.jenkins.getWorkspaceFor(p);
+        ws.child("echo.groovy").write("Pipeline.output(Pipeline.input())", null);
+        p.setDefinition(new CpsFlowDefinition("node {for (int i = 0; i < 2; i++) {echo(/got ${withGroovy(input: i) {if (isUnix()) {sh 'groovy echo.groovy'} else {bat 'groovy echo.groovy'}}}/)}}", true));
+        WorkflowRun b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("got 0", b);
+        j.assertLogContains("got 1", b);
+        List<FilePath> children = WorkspaceList.tempDir(ws).list();
+        assertEquals(1, children.size(), children::toString);
+        assertTrue(children.get(0).getName().startsWith("groovy-wrapper-"));
+    }
+
     @Test
     void ioJep200() throws Exception {
         WorkflowJob p = j.createProject(WorkflowJob.class, "p");
@@ -81,9 +111,7 @@ class WithGroovyStepTest {
     @Test
     void tool() throws Exception {
         assumeFalse(Functions.isWindows(), "TODO fails on Windows CI: JAVA_HOME is set to an invalid directory: C:/tools/jdk-8");
-        FilePath home = j.jenkins.getRootPath();
-        home.unzipFrom(WithGroovyStepTest.class.getResourceAsStream("/groovy-binary-2.4.21.zip"));
-        j.jenkins.getDescriptorByType(GroovyInstallation.DescriptorImpl.class).setInstallations(new GroovyInstallation("2.4.x", home.child("groovy-2.4.21").getRemote(), null));
+        TestGroovy.install(j);
         WorkflowJob p = j.createProject(WorkflowJob.class, "p");
         j.jenkins.getWorkspaceFor(p).child("x.groovy").write("println(/running $GroovySystem.version/)", null);
         p.setDefinition(new CpsFlowDefinition("node {withGroovy(tool: '2.4.x') {if (isUnix()) {sh 'env | egrep \"PATH|GROOVY\"; groovy x.groovy'} else {bat 'groovy x.groovy'}}}", true));
@@ -142,9 +170,7 @@ class WithGroovyStepTest {
             j.jenkins.getDescriptorByType(JDK.DescriptorImpl.class).setInstallations(new JDK("jdk17", "/usr/lib/jvm/java-17-openjdk-amd64"));
             p.setDefinition(new CpsFlowDefinition("node('docker') {withGroovy(jdk: 'jdk17') {sh 'env | fgrep PATH; groovy x.groovy'}}", true));
             j.assertLogContains("running 17.", j.buildAndAssertSuccess(p));
-            FilePath home = s.getRootPath();
-            home.unzipFrom(WithGroovyStepTest.class.getResourceAsStream("/groovy-binary-2.4.21.zip"));
-            j.jenkins.getDescriptorByType(GroovyInstallation.DescriptorImpl.class).setInstallations(new GroovyInstallation("2.4.x", home.child("groovy-2.4.21").getRemote(), null));
+            TestGroovy.install(j, s.getRootPath());
             s.getWorkspaceFor(p).child("x.groovy").write("println(/running $GroovySystem.version on ${System.properties['java.version']}/)", null);
             p.setDefinition(new CpsFlowDefinition("node('docker') {withGroovy(tool: '2.4.x', jdk: 'jdk17') {sh 'env | fgrep PATH; groovy x.groovy'}}", true));
             j.assertLogContains("running 2.4.21 on 17.", j.buildAndAssertSuccess(p));